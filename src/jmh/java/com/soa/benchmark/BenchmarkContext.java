@@ -0,0 +1,60 @@
+package com.soa.benchmark;
+
+import com.soa.Application;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Avvia il contesto Spring senza server web su un database locale. Di default è H2 in modalità PostgreSQL, in
+ * memoria; con le variabili d'ambiente {@code BENCH_DATASOURCE_URL} (e {@code _USERNAME}/{@code _PASSWORD}) si può
+ * puntare a un Postgres locale. Sono variabili d'ambiente perché arrivano anche ai JVM forkati da JMH.
+ */
+final class BenchmarkContext {
+
+    private static final String H2_URL = "jdbc:h2:mem:bench;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+            + "DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1";
+
+    // Senza server web Vaadin e Hilla non possono partire: i benchmark usano solo servizi e repository
+    private static final List<String> VAADIN_AUTOCONFIGURATIONS = List.of(
+            "com.vaadin.flow.spring.SpringBootAutoConfiguration",
+            "com.vaadin.flow.spring.SpringSecurityAutoConfiguration",
+            "com.vaadin.flow.spring.VaadinScopesConfig",
+            "com.vaadin.hilla.EndpointController",
+            "com.vaadin.hilla.push.PushConfigurer",
+            "com.vaadin.hilla.ApplicationContextProvider",
+            "com.vaadin.hilla.startup.EndpointRegistryInitializer",
+            "com.vaadin.hilla.startup.RouteUnifyingServiceInitListener",
+            "com.vaadin.hilla.route.RouteUtil",
+            "com.vaadin.hilla.route.RouteUnifyingConfiguration",
+            "com.vaadin.hilla.signals.config.SignalsConfiguration");
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start(String... extraProperties) {
+        // Passate come argomenti da riga di comando, così prevalgono su application.properties
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=" + setting("BENCH_DATASOURCE_URL", H2_URL),
+                "--spring.datasource.username=" + setting("BENCH_DATASOURCE_USERNAME", "sa"),
+                "--spring.datasource.password=" + setting("BENCH_DATASOURCE_PASSWORD", ""),
+                "--spring.jmx.enabled=false",
+                "--spring.autoconfigure.exclude=" + String.join(",", VAADIN_AUTOCONFIGURATIONS),
+                "--vaadin.launch-browser=false",
+                "--logging.level.root=warn"));
+        for (String property : extraProperties) {
+            args.add("--" + property);
+        }
+        return new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(String[]::new));
+    }
+
+    private static String setting(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+}
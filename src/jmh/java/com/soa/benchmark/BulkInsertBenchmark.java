@@ -0,0 +1,64 @@
+package com.soa.benchmark;
+
+import com.soa.service.WatchService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Righe al secondo di {@link WatchService#saveAll}, prima e dopo id pooled e batching. Con {@code allocationSize=1}
+ * ogni riga chiede il suo id alla sequence e con {@code jdbcBatchSize=1} ogni insert è un round-trip: insieme sono il
+ * comportamento senza le due ottimizzazioni. Con 50 e 50 si misura la configurazione dell'applicazione.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BulkInsertBenchmark {
+
+    private static final int ROWS = 1000;
+
+    @Param({"1", "50"})
+    int allocationSize;
+
+    @Param({"1", "50"})
+    int jdbcBatchSize;
+
+    private ConfigurableApplicationContext context;
+    private WatchService watchService;
+    private CollectionFixture fixture;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("watchers.ids.allocation-size=" + allocationSize,
+                "spring.jpa.properties.hibernate.jdbc.batch_size=" + jdbcBatchSize);
+        watchService = context.getBean(WatchService.class);
+        fixture = CollectionFixture.create(context, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int saveAll() {
+        return watchService.saveAll(fixture.newWatches(ROWS)).size();
+    }
+}
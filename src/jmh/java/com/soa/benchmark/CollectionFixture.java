@@ -0,0 +1,73 @@
+package com.soa.benchmark;
+
+import com.soa.model.Producer;
+import com.soa.model.Role;
+import com.soa.model.User;
+import com.soa.model.Watch;
+import com.soa.repository.ProducerRepository;
+import com.soa.repository.UserRepository;
+import com.soa.service.WatchService;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Dati di prova deterministici: un utente, qualche produttore e una collezione della dimensione richiesta.
+ */
+final class CollectionFixture {
+
+    static final String EMAIL = "collector@example.com";
+    private static final int PRODUCERS = 20;
+    private static final int CHUNK = 1000;
+
+    final User user;
+    final List<Producer> producers;
+    private final Random random = new Random(42);
+
+    private CollectionFixture(User user, List<Producer> producers) {
+        this.user = user;
+        this.producers = producers;
+    }
+
+    static CollectionFixture create(ConfigurableApplicationContext context, int collectionSize) {
+        ProducerRepository producerRepository = context.getBean(ProducerRepository.class);
+        List<Producer> producers = new ArrayList<>();
+        for (int i = 0; i < PRODUCERS; i++) {
+            Producer producer = new Producer();
+            producer.setName("Produttore " + i);
+            producer.setCode("P" + i);
+            producers.add(producer);
+        }
+        producers = producerRepository.saveAll(producers);
+
+        User user = new User();
+        user.setEmail(EMAIL);
+        user.setPasswordSalt("c2FsdA==");
+        user.setPasswordHash("0000000000000000000000000000000000000000");
+        user.setRole(Role.USER);
+        user = context.getBean(UserRepository.class).save(user);
+
+        CollectionFixture fixture = new CollectionFixture(user, producers);
+        WatchService watchService = context.getBean(WatchService.class);
+        for (int saved = 0; saved < collectionSize; saved += CHUNK) {
+            watchService.saveAll(fixture.newWatches(Math.min(CHUNK, collectionSize - saved)));
+        }
+        return fixture;
+    }
+
+    List<Watch> newWatches(int count) {
+        List<Watch> watches = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Watch watch = new Watch();
+            watch.setReferenceId("REF-" + random.nextInt(1_000_000));
+            watch.setProducer(producers.get(random.nextInt(producers.size())));
+            watch.setUser(user);
+            watch.setPurchaseDate(LocalDate.of(2000, 1, 1).plusDays(random.nextInt(9000)));
+            watches.add(watch);
+        }
+        return watches;
+    }
+}
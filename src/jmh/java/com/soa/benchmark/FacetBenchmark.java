@@ -0,0 +1,138 @@
+package com.soa.benchmark;
+
+import com.soa.model.CaseMaterial;
+import com.soa.model.Complication;
+import com.soa.model.Movement;
+import com.soa.model.Watch;
+import com.soa.model.WatchDetail;
+import com.soa.service.WatchFacetService;
+import com.soa.service.WatchFacetService.Facet;
+import com.soa.service.WatchesChangedEvent;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Click sui filtri a faccette di una collezione grande: conteggi di tutte le faccette e prima pagina filtrata, con
+ * l'indice già in memoria, e costruzione dell'indice dopo una scrittura. I conteggi devono restare nell'ordine del
+ * millisecondo anche a centomila orologi.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FacetBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+    private static final int CHUNK = 1000;
+
+    @Param({"10000", "100000"})
+    int collectionSize;
+
+    private ConfigurableApplicationContext context;
+    private WatchFacetService facetService;
+    private Long userId;
+    private Map<Facet, Set<String>> selection;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        facetService = context.getBean(WatchFacetService.class);
+        CollectionFixture fixture = CollectionFixture.create(context, collectionSize);
+        userId = fixture.user.getId();
+        addSpecifications();
+
+        // Due produttori, un movimento e una complicazione: OR dentro la faccetta, AND tra le faccette
+        selection = Map.of(
+                Facet.PRODUCER, Set.of(fixture.producers.get(0).getId().toString(),
+                        fixture.producers.get(1).getId().toString()),
+                Facet.MOVEMENT, Set.of(Movement.AUTOMATIC.name()),
+                Facet.COMPLICATION, Set.of(Complication.CHRONOGRAPH.name()));
+        if (facetService.facets(userId, selection).total() == 0) {
+            throw new IllegalStateException("La selezione del benchmark non trova orologi");
+        }
+    }
+
+    private void addSpecifications() {
+        EntityManager entityManager = context.getBean(EntityManager.class);
+        TransactionTemplate transactionTemplate = context.getBean(TransactionTemplate.class);
+        Random random = new Random(42);
+        for (int offset = 0; offset < collectionSize; offset += CHUNK) {
+            int first = offset;
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Watch> watches = entityManager.createQuery(
+                                "select w from Watch w where w.user.id = :userId order by w.id", Watch.class)
+                        .setParameter("userId", userId)
+                        .setFirstResult(first)
+                        .setMaxResults(CHUNK)
+                        .getResultList();
+                for (Watch watch : watches) {
+                    WatchDetail detail = randomDetail(random);
+                    entityManager.persist(detail);
+                    watch.setSpecifications(detail);
+                }
+                entityManager.flush();
+                entityManager.clear();
+            });
+        }
+        context.publishEvent(new WatchesChangedEvent(userId));
+    }
+
+    private static WatchDetail randomDetail(Random random) {
+        WatchDetail detail = new WatchDetail();
+        detail.setCaseSizeMm(34 + random.nextInt(14));
+        detail.setMovement(Movement.values()[random.nextInt(Movement.values().length)]);
+        detail.setCaseMaterial(CaseMaterial.values()[random.nextInt(CaseMaterial.values().length)]);
+        Set<Complication> complications = EnumSet.noneOf(Complication.class);
+        for (Complication complication : Complication.values()) {
+            if (random.nextInt(4) == 0) {
+                complications.add(complication);
+            }
+        }
+        detail.setComplications(complications);
+        detail.setWaterResistanceM(30 + random.nextInt(10) * 50);
+        return detail;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public WatchFacetService.FacetResult facetCounts() {
+        return facetService.facets(userId, selection);
+    }
+
+    @Benchmark
+    public List<Watch> filteredPage() {
+        return facetService.findPage(userId, selection, 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public WatchFacetService.FacetResult rebuildAfterWrite() {
+        context.publishEvent(new WatchesChangedEvent(userId));
+        return facetService.facets(userId, selection);
+    }
+}
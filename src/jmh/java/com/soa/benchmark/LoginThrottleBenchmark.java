@@ -0,0 +1,70 @@
+package com.soa.benchmark;
+
+import com.soa.service.LoginThrottle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo del limite ai tentativi di login da quattro thread: tentativi ammessi su molte email e indirizzi, e una
+ * raffica da un solo indirizzo già bloccato, che deve essere respinta senza lock e senza stack trace. Non serve il
+ * contesto Spring: il limite non tocca database né hashing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LoginThrottleBenchmark {
+
+    private static final int KEYS = 10_000;
+
+    private LoginThrottle permissive;
+    private LoginThrottle strict;
+    private String[] emails;
+    private String[] addresses;
+
+    @Setup
+    public void setUp() {
+        // Limiti così alti che nessun tentativo viene respinto: si misura solo il costo del controllo
+        permissive = new LoginThrottle(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                KEYS * 2L);
+        strict = new LoginThrottle(10, 5, 120, 30, KEYS * 2L);
+        emails = new String[KEYS];
+        addresses = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            emails[i] = "user" + i + "@example.com";
+            addresses[i] = "10.0." + (i / 256) + "." + (i % 256);
+        }
+    }
+
+    @Benchmark
+    public boolean allowed() {
+        int index = ThreadLocalRandom.current().nextInt(KEYS);
+        permissive.check(emails[index], addresses[index]);
+        return true;
+    }
+
+    @Benchmark
+    public boolean rejectedBurst() {
+        try {
+            strict.check(emails[ThreadLocalRandom.current().nextInt(KEYS)], "192.0.2.1");
+            return true;
+        } catch (LoginThrottle.ThrottledException e) {
+            return false;
+        }
+    }
+}
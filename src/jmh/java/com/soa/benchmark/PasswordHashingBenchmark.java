@@ -0,0 +1,74 @@
+package com.soa.benchmark;
+
+import com.soa.service.PasswordHashingService;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo per singola operazione del percorso delle credenziali: generazione del salt, verifica di un hash SHA-1
+ * legacy, verifica e calcolo di un hash PBKDF2 corrente.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PasswordHashingBenchmark {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @Param({"210000"})
+    int iterations;
+
+    private PasswordHashingService hashing;
+    private String salt;
+    private String legacyHash;
+    private String currentHash;
+
+    @Setup
+    public void setUp() {
+        hashing = new PasswordHashingService(iterations, 1, 16);
+        salt = hashing.newSalt();
+        legacyHash = DigestUtils.sha1Hex(PASSWORD + salt);
+        currentHash = hashing.hashNow(PASSWORD, salt);
+    }
+
+    @TearDown
+    public void tearDown() {
+        hashing.executor().shutdown();
+    }
+
+    @Benchmark
+    public String newSalt() {
+        return hashing.newSalt();
+    }
+
+    @Benchmark
+    public PasswordHashingService.Verification verifyLegacy() {
+        return hashing.verifyNow(PASSWORD, salt, legacyHash);
+    }
+
+    @Benchmark
+    public PasswordHashingService.Verification verifyCurrent() {
+        return hashing.verifyNow(PASSWORD, salt, currentHash);
+    }
+
+    @Benchmark
+    public String hash() {
+        return hashing.hashNow(PASSWORD, salt);
+    }
+}
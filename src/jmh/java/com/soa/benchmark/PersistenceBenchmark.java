@@ -0,0 +1,90 @@
+package com.soa.benchmark;
+
+import com.soa.model.User;
+import com.soa.model.Watch;
+import com.soa.repository.UserCredentials;
+import com.soa.repository.UserRepository;
+import com.soa.repository.WatchCursor;
+import com.soa.service.WatchService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup dell'utente e pagine della collezione sul database locale. La pagina profonda parte da una chiave vicina
+ * alla fine della collezione: con la paginazione keyset deve costare quanto la prima.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PersistenceBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"10000"})
+    int collectionSize;
+
+    private ConfigurableApplicationContext context;
+    private UserRepository userRepository;
+    private WatchService watchService;
+    private Long userId;
+    private WatchCursor deepCursor;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        userRepository = context.getBean(UserRepository.class);
+        watchService = context.getBean(WatchService.class);
+
+        CollectionFixture fixture = CollectionFixture.create(context, collectionSize);
+        userId = fixture.user.getId();
+        deepCursor = watchService.findCursor(userId, null, collectionSize - PAGE_SIZE - 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public User findByEmail() {
+        return userRepository.findByEmail(CollectionFixture.EMAIL);
+    }
+
+    @Benchmark
+    public Optional<UserCredentials> findCredentialsByEmail() {
+        return userRepository.findCredentialsByEmail(CollectionFixture.EMAIL);
+    }
+
+    @Benchmark
+    public List<Watch> firstPage() {
+        return watchService.findPage(userId, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Watch> deepPage() {
+        return watchService.findPage(userId, deepCursor, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public int count() {
+        return watchService.countWatches(userId);
+    }
+}
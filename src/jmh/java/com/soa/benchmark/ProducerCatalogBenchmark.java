@@ -0,0 +1,100 @@
+package com.soa.benchmark;
+
+import com.soa.model.Producer;
+import com.soa.repository.ProducerRepository;
+import com.soa.service.ProducerCatalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup nel catalogo produttori da tre thread, da soli e mentre un altro thread ricarica il catalogo dal database.
+ * Ogni lettura controlla di aver trovato il produttore giusto per id e per codice: durante lo scambio degli snapshot
+ * non deve mai mancare né essere mescolato, altrimenti il benchmark fallisce.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ProducerCatalogBenchmark {
+
+    private static final int PRODUCERS = 500;
+
+    private ConfigurableApplicationContext context;
+    private ProducerCatalog catalog;
+    private long[] ids;
+    private String[] codes;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        List<Producer> producers = new ArrayList<>();
+        for (int i = 0; i < PRODUCERS; i++) {
+            Producer producer = new Producer();
+            producer.setName("Produttore " + i);
+            producer.setCode("P" + i);
+            producers.add(producer);
+        }
+        context.getBean(ProducerRepository.class).saveAll(producers);
+        catalog = context.getBean(ProducerCatalog.class);
+        catalog.refresh();
+
+        List<Producer> loaded = catalog.findAll();
+        ids = loaded.stream().mapToLong(Producer::getId).toArray();
+        codes = loaded.stream().map(Producer::getCode).toArray(String[]::new);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Group("lookup")
+    @GroupThreads(3)
+    public Producer lookup() {
+        return checkedLookup();
+    }
+
+    @Benchmark
+    @Group("lookupDuringRefresh")
+    @GroupThreads(3)
+    public Producer readers() {
+        return checkedLookup();
+    }
+
+    @Benchmark
+    @Group("lookupDuringRefresh")
+    @GroupThreads(1)
+    public void refresher() {
+        catalog.refresh();
+    }
+
+    private Producer checkedLookup() {
+        int index = ThreadLocalRandom.current().nextInt(ids.length);
+        Producer byId = catalog.findById(ids[index]);
+        Producer byCode = catalog.findByCode(codes[index]);
+        if (byId == null || byCode == null || byId.getId() != ids[index] || !byId.getId().equals(byCode.getId())) {
+            throw new IllegalStateException("Lookup incoerente per il produttore " + ids[index]);
+        }
+        return byId;
+    }
+}
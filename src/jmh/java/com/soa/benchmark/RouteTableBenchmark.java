@@ -0,0 +1,48 @@
+package com.soa.benchmark;
+
+import com.soa.model.Role;
+import com.soa.service.AuthService;
+import com.soa.views.home.HomeView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup nelle tabelle delle rotte per ruolo, eseguito a ogni login e a ogni navigazione.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RouteTableBenchmark {
+
+    private AuthService authService;
+
+    @Setup
+    public void setUp() {
+        // Le tabelle delle rotte non usano le dipendenze del servizio
+        authService = new AuthService(null, null, null, null, null, 1);
+    }
+
+    @Benchmark
+    public List<AuthService.AuthorizedRoute> authorizedRoutes() {
+        return authService.getAuthorizedRoutes(Role.USER);
+    }
+
+    @Benchmark
+    public boolean isAuthorized() {
+        return authService.isAuthorized(Role.USER, HomeView.class);
+    }
+}
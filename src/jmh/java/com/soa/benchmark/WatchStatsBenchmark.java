@@ -0,0 +1,90 @@
+package com.soa.benchmark;
+
+import com.soa.model.Watch;
+import com.soa.service.WatchStatsService;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Apertura della dashboard per una collezione piccola e una grande: le statistiche arrivano dalla tabella riassuntiva,
+ * quindi i due tempi devono essere uguali. Prima di misurare, il setup sposta e cancella un orologio e confronta la
+ * tabella con un conteggio completo di {@code watches}: se gli aggiornamenti incrementali sbagliano, il benchmark
+ * fallisce.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WatchStatsBenchmark {
+
+    @Param({"10", "100000"})
+    int collectionSize;
+
+    private ConfigurableApplicationContext context;
+    private WatchStatsService statsService;
+    private Long userId;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        statsService = context.getBean(WatchStatsService.class);
+        userId = CollectionFixture.create(context, collectionSize).user.getId();
+
+        EntityManager entityManager = context.getBean(EntityManager.class);
+        TransactionTemplate transactionTemplate = context.getBean(TransactionTemplate.class);
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Watch> watches = entityManager.createQuery(
+                            "select w from Watch w where w.user.id = :userId order by w.id", Watch.class)
+                    .setParameter("userId", userId)
+                    .setMaxResults(2)
+                    .getResultList();
+            watches.get(0).setPurchaseDate(watches.get(0).getPurchaseDate().minusYears(30));
+            entityManager.remove(watches.get(1));
+        });
+        checkConsistency(entityManager, transactionTemplate);
+    }
+
+    private void checkConsistency(EntityManager entityManager, TransactionTemplate transactionTemplate) {
+        List<Object[]> expected = transactionTemplate.execute(status -> entityManager.createQuery(
+                        "select year(w.purchaseDate), count(w) from Watch w where w.user.id = :userId "
+                                + "group by year(w.purchaseDate) order by year(w.purchaseDate) desc", Object[].class)
+                .setParameter("userId", userId)
+                .getResultList());
+        List<WatchStatsService.YearCount> actual = statsService.statsFor(userId).byYear();
+        List<WatchStatsService.YearCount> full = expected.stream()
+                .map(row -> new WatchStatsService.YearCount(((Number) row[0]).intValue(),
+                        ((Number) row[1]).longValue()))
+                .toList();
+        if (!full.equals(actual)) {
+            throw new IllegalStateException("watch_stats non allineata: " + actual + " invece di " + full);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public WatchStatsService.CollectionStats openDashboard() {
+        return statsService.statsFor(userId);
+    }
+}
@@ -0,0 +1,153 @@
+package com.soa.benchmark;
+
+import com.soa.model.Watch;
+import com.soa.service.WatchValueService;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storico del valore di {@value #WATCHES} orologi con poche quotazioni ciascuno e con uno storico lungo (fino a un
+ * milione di quotazioni in tutto, caricate nel setup in ordine sparso). I grafici leggono solo le serie riassuntive,
+ * quindi i tempi devono restare uguali con i due storici; le quotazioni giornaliere di tutta la collezione, in coda
+ * allo storico, costano per quotazione. Prima di misurare il setup confronta il valore di fine anno delle serie con
+ * quello ricalcolato dalle quotazioni: se gli aggiornamenti incrementali sbagliano, il benchmark fallisce.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WatchValueBenchmark {
+
+    private static final int WATCHES = 1000;
+    private static final LocalDate HISTORY_END = LocalDate.of(2025, 12, 31);
+
+    @Param({"10", "1000"})
+    int quotesPerWatch;
+
+    private ConfigurableApplicationContext context;
+    private WatchValueService valueService;
+    private Long userId;
+    private List<Watch> watches;
+    private LocalDate nextDay = HISTORY_END.plusDays(1);
+    private final Random random = new Random(42);
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        valueService = context.getBean(WatchValueService.class);
+        userId = CollectionFixture.create(context, WATCHES).user.getId();
+        watches = context.getBean(TransactionTemplate.class).execute(status -> context.getBean(EntityManager.class)
+                .createQuery("select w from Watch w where w.user.id = :userId order by w.id", Watch.class)
+                .setParameter("userId", userId)
+                .getResultList());
+
+        // Storico completo di ogni orologio, dall'acquisto a fine 2025, scritto a blocchi mescolati tra loro
+        List<WatchValueService.Quote> history = new ArrayList<>(WATCHES * quotesPerWatch);
+        long[] expected = new long[HISTORY_END.getYear() + 1];
+        for (Watch watch : watches) {
+            long days = ChronoUnit.DAYS.between(watch.getPurchaseDate(), HISTORY_END);
+            // Un giorno per quotazione: a parità di giorno vale l'ultima ricevuta, che dopo il mescolamento è casuale
+            int count = (int) Math.max(1, Math.min(quotesPerWatch, days));
+            long cents = 100_000 + random.nextInt(1_000_000);
+            List<WatchValueService.Quote> quotes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                LocalDate day = watch.getPurchaseDate().plusDays(days * i / count);
+                cents = Math.max(0, cents + random.nextInt(20_001) - 10_000);
+                quotes.add(new WatchValueService.Quote(watch.getId(), day, BigDecimal.valueOf(cents, 2)));
+            }
+            addYearEnds(quotes, expected);
+            history.addAll(quotes);
+        }
+        Collections.shuffle(history, random);
+        valueService.record(userId, history);
+        checkConsistency(expected);
+    }
+
+    /**
+     * Aggiunge a {@code expected} il valore di fine anno dell'orologio: l'ultima quotazione fino a quell'anno.
+     */
+    private static void addYearEnds(List<WatchValueService.Quote> quotes, long[] expected) {
+        int q = 0;
+        long cents = 0;
+        for (int year = 0; year < expected.length; year++) {
+            while (q < quotes.size() && quotes.get(q).valuedOn().getYear() <= year) {
+                cents = quotes.get(q++).value().unscaledValue().longValueExact();
+            }
+            expected[year] += cents;
+        }
+    }
+
+    private void checkConsistency(long[] expected) {
+        // Una serie per granularità: annuale dal 1990, mensile dal 2000, giornaliera nell'ultimo anno
+        checkYearEnds(LocalDate.of(1990, 1, 1), expected);
+        checkYearEnds(LocalDate.of(2000, 1, 1), expected);
+        checkYearEnds(HISTORY_END.withDayOfYear(1), expected);
+    }
+
+    private void checkYearEnds(LocalDate from, long[] expected) {
+        WatchValueService.ValueHistory history = valueService.history(userId, from, HISTORY_END);
+        for (WatchValueService.ValuePoint point : history.points()) {
+            LocalDate end = history.resolution().next(point.bucket()).minusDays(1);
+            if (end.getMonthValue() != 12 || end.getDayOfMonth() != 31) {
+                continue;
+            }
+            long actual = point.value().unscaledValue().longValueExact();
+            if (actual != expected[end.getYear()]) {
+                throw new IllegalStateException("Serie " + history.resolution() + " non allineata a fine "
+                        + end.getYear() + ": " + actual + " invece di " + expected[end.getYear()]);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public WatchValueService.ValueHistory chartTwentyYears() {
+        return valueService.history(userId, HISTORY_END.minusYears(20).plusDays(1), HISTORY_END);
+    }
+
+    @Benchmark
+    public WatchValueService.ValueHistory chartOneYear() {
+        return valueService.history(userId, HISTORY_END.minusYears(1).plusDays(1), HISTORY_END);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WATCHES)
+    public long appendDailyQuotes() {
+        LocalDate day = nextDay;
+        nextDay = nextDay.plusDays(1);
+        List<WatchValueService.Quote> quotes = new ArrayList<>(WATCHES);
+        for (Watch watch : watches) {
+            quotes.add(new WatchValueService.Quote(watch.getId(), day, BigDecimal.valueOf(random.nextInt(100_000))));
+        }
+        return valueService.record(userId, quotes);
+    }
+}
@@ -0,0 +1,265 @@
+package com.soa.loadtest;
+
+import com.soa.Application;
+import com.soa.model.Producer;
+import com.soa.model.User;
+import com.soa.model.Watch;
+import com.soa.monitoring.SessionInspector;
+import com.soa.repository.ProducerRepository;
+import com.soa.repository.UserRepository;
+import com.soa.service.AuthService;
+import com.soa.service.ProducerCatalog;
+import com.soa.service.UserService;
+import com.soa.service.WatchService;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test di carico: avvia l'applicazione in locale e la attraversa con fasi di utenti simulati sempre più numerose
+ * ({@code loadtest.stages}, ad esempio {@code 10,25,50,100}). Per ogni fase stampa richieste al secondo, p50/p95/p99
+ * ed errori di ogni passo, le sessioni Vaadin vive sul nodo e il picco di connessioni JDBC attive e in attesa, e
+ * accoda tutto in un CSV ({@code loadtest.output}).
+ * <p>
+ * Il database è H2 in modalità PostgreSQL in memoria; con {@code LOADTEST_DATASOURCE_URL} (e {@code _USERNAME}/
+ * {@code _PASSWORD}) si può usare un Postgres locale. Le sessioni restano aperte tra una fase e l'altra, come su un
+ * nodo vero, quindi le sessioni vive crescono con le fasi.
+ * <p>
+ * L'ultima fase registra in parallelo la stessa email da {@code loadtest.duplicates} utenti alla volta: per ogni email
+ * deve vincere esattamente una registrazione, altrimenti il test fallisce.
+ */
+public final class LoadTest {
+
+    private static final String H2_URL = "jdbc:h2:mem:loadtest;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+            + "DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1";
+    private static final int PRODUCERS = 20;
+    private static final int DUPLICATE_ROUNDS = 10;
+
+    /**
+     * Quello che serve agli utenti simulati: l'indirizzo dell'applicazione e i servizi usati dalle viste.
+     */
+    record Target(String baseUrl, UserService userService, AuthService authService, WatchService watchService,
+                  ProducerCatalog producerCatalog, int collectionSize) {
+
+        void seedCollection(User user) {
+            Random random = new Random(user.getId());
+            List<Producer> producers = producerCatalog.findAll();
+            List<Watch> watches = new ArrayList<>(collectionSize);
+            for (int i = 0; i < collectionSize; i++) {
+                Watch watch = new Watch();
+                watch.setReferenceId("REF-" + random.nextInt(1_000_000));
+                watch.setProducer(producers.get(random.nextInt(producers.size())));
+                watch.setUser(user);
+                watch.setPurchaseDate(LocalDate.of(2000, 1, 1).plusDays(random.nextInt(9000)));
+                watches.add(watch);
+            }
+            watchService.saveAll(watches);
+        }
+    }
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] stages = Arrays.stream(System.getProperty("loadtest.stages", "10,25,50,100").split(","))
+                .mapToInt(stage -> Integer.parseInt(stage.trim()))
+                .toArray();
+        int iterations = Integer.getInteger("loadtest.iterations", 5);
+        int collectionSize = Integer.getInteger("loadtest.collection-size", 200);
+        int duplicates = Integer.getInteger("loadtest.duplicates", 20);
+        Path output = Path.of(System.getProperty("loadtest.output", "target/loadtest-result.csv"));
+
+        try (ConfigurableApplicationContext context = start()) {
+            Target target = new Target("http://localhost:" + context.getEnvironment().getProperty("local.server.port"),
+                    context.getBean(UserService.class), context.getBean(AuthService.class),
+                    context.getBean(WatchService.class), createProducers(context), collectionSize);
+            HikariPoolMXBean pool = context.getBean(DataSource.class).unwrap(HikariDataSource.class)
+                    .getHikariPoolMXBean();
+            SessionInspector sessionInspector = context.getBean(SessionInspector.class);
+
+            StringBuilder csv = new StringBuilder(StageMetrics.csvHeader());
+            for (int stage = 0; stage < stages.length; stage++) {
+                int users = stages[stage];
+                StageMetrics metrics = new StageMetrics();
+                PoolPeaks peaks = new PoolPeaks();
+
+                ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+                sampler.scheduleAtFixedRate(() -> peaks.sample(pool), 0, 50, TimeUnit.MILLISECONDS);
+                long start = System.nanoTime();
+                int failedUsers = runStage(target, metrics, stage, users, iterations);
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                sampler.shutdownNow();
+
+                int liveSessions = sessionInspector.getLiveSessions();
+                System.out.printf("%n== %d utenti (%d interrotti) in %.1f s, sessioni Vaadin vive: %d, "
+                                + "connessioni JDBC di picco: %d attive, %d in attesa ==%n",
+                        users, failedUsers, elapsed, liveSessions, peaks.active.get(), peaks.waiting.get());
+                metrics.print(System.out, elapsed);
+                metrics.appendCsv(csv, users, elapsed, liveSessions, peaks.active.get(), peaks.waiting.get());
+            }
+
+            if (duplicates > 1) {
+                StageMetrics metrics = new StageMetrics();
+                long start = System.nanoTime();
+                runDuplicateRegistrations(target, context.getBean(UserRepository.class), metrics, duplicates);
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%n== %d registrazioni concorrenti della stessa email x %d: un solo vincitore "
+                        + "per email ==%n", duplicates, DUPLICATE_ROUNDS);
+                metrics.print(System.out, elapsed);
+                metrics.appendCsv(csv, duplicates, elapsed, sessionInspector.getLiveSessions(), 0, 0);
+            }
+
+            Files.createDirectories(output.toAbsolutePath().getParent());
+            Files.writeString(output, csv);
+            System.out.println("\nRisultati in " + output.toAbsolutePath());
+        }
+    }
+
+    private static int runStage(Target target, StageMetrics metrics, int stage, int users, int iterations)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            VirtualUser user = new VirtualUser(target, metrics, VirtualUser.email(stage, i),
+                    VirtualUser.address(stage, i));
+            results.add(executor.submit(() -> {
+                go.await();
+                user.run(iterations);
+                return null;
+            }));
+        }
+
+        // Partono tutti insieme: il carico della fase è la concorrenza, non la velocità di avvio dei thread
+        go.countDown();
+        int failed = 0;
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                // L'errore è già contato sul passo che l'ha causato; l'utente simulato si ferma lì
+                failed++;
+            }
+        }
+        executor.shutdown();
+        return failed;
+    }
+
+    private static void runDuplicateRegistrations(Target target, UserRepository userRepository,
+                                                  StageMetrics metrics, int contenders)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(contenders);
+        try {
+            for (int round = 0; round < DUPLICATE_ROUNDS; round++) {
+                String email = "duplicate-" + round + "@loadtest.local";
+                CountDownLatch go = new CountDownLatch(1);
+                List<Future<Boolean>> attempts = new ArrayList<>(contenders);
+                for (int i = 0; i < contenders; i++) {
+                    String address = VirtualUser.address(255, i);
+                    attempts.add(executor.submit(() -> {
+                        go.await();
+                        return metrics.record("register-duplicate", () -> registered(target, email, address));
+                    }));
+                }
+                go.countDown();
+
+                int winners = 0;
+                for (Future<Boolean> attempt : attempts) {
+                    try {
+                        winners += attempt.get() ? 1 : 0;
+                    } catch (ExecutionException e) {
+                        // Errore inatteso, già contato sul passo
+                    }
+                }
+                if (winners != 1 || userRepository.findByEmail(email) == null) {
+                    throw new IllegalStateException(email + ": " + winners + " registrazioni riuscite su "
+                            + contenders + ", attesa una sola");
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Il rifiuto per email già registrata è l'esito atteso per tutti tranne uno, non un errore
+    private static boolean registered(Target target, String email, String address) {
+        try {
+            target.userService().registerUser(email, "pw-" + email, address).join();
+            return true;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof AuthService.AuthException) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private static ConfigurableApplicationContext start() {
+        // Il riavvio di devtools farebbe ripartire il contesto in un altro classloader, fuori dal controllo del test
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        // Passate come argomenti da riga di comando, così prevalgono su application.properties
+        return new SpringApplicationBuilder(Application.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=" + setting("LOADTEST_DATASOURCE_URL", H2_URL),
+                "--spring.datasource.username=" + setting("LOADTEST_DATASOURCE_USERNAME", "sa"),
+                "--spring.datasource.password=" + setting("LOADTEST_DATASOURCE_PASSWORD", ""),
+                "--vaadin.launch-browser=false",
+                "--logging.level.root=warn",
+                // Ogni utente simulato fa login a ripetizione e la fase dei duplicati registra la stessa email da
+                // molti client insieme: con i limiti di produzione verrebbero respinti quasi tutti
+                "--watchers.throttle.email.per-minute=100000",
+                "--watchers.throttle.email.burst=1000",
+                // Le violazioni del vincolo unico sono l'esito atteso della fase con email duplicate
+                "--logging.level.org.hibernate.engine.jdbc.spi.SqlExceptionHelper=off");
+    }
+
+    private static ProducerCatalog createProducers(ConfigurableApplicationContext context) {
+        List<Producer> producers = new ArrayList<>();
+        for (int i = 0; i < PRODUCERS; i++) {
+            Producer producer = new Producer();
+            producer.setName("Produttore " + i);
+            producer.setCode("P" + i);
+            producers.add(producer);
+        }
+        context.getBean(ProducerRepository.class).saveAll(producers);
+        ProducerCatalog producerCatalog = context.getBean(ProducerCatalog.class);
+        producerCatalog.refresh();
+        return producerCatalog;
+    }
+
+    private static String setting(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+
+    private static final class PoolPeaks {
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        void sample(HikariPoolMXBean pool) {
+            if (pool != null) {
+                active.accumulateAndGet(pool.getActiveConnections(), Math::max);
+                waiting.accumulateAndGet(pool.getThreadsAwaitingConnection(), Math::max);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.soa.loadtest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempi ed errori di ogni passo dello scenario per una singola fase di carico. Ogni fase ha il proprio registry, così
+ * i percentili non si mescolano tra livelli di concorrenza diversi.
+ */
+final class StageMetrics {
+
+    static final List<String> STEPS = List.of("login-view", "registration-view", "register", "login", "browse",
+            "register-duplicate");
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    <T> T record(String step, Callable<T> action) throws Exception {
+        Timer.Sample sample = Timer.start(registry);
+        try {
+            T result = action.call();
+            sample.stop(timer(step));
+            return result;
+        } catch (Exception e) {
+            sample.stop(timer(step));
+            errors(step).increment();
+            throw e;
+        }
+    }
+
+    private Timer timer(String step) {
+        return Timer.builder("loadtest.step")
+                .tag("step", step)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                // La finestra dei percentili copre tutta la fase, non solo gli ultimi minuti
+                .distributionStatisticExpiry(Duration.ofHours(1))
+                .distributionStatisticBufferLength(1)
+                .register(registry);
+    }
+
+    private Counter errors(String step) {
+        return Counter.builder("loadtest.errors").tag("step", step).register(registry);
+    }
+
+    void print(PrintStream out, double elapsedSeconds) {
+        out.printf("%-18s %8s %8s %7s %10s %9s %9s %9s%n",
+                "passo", "richieste", "errori", "errori%", "richieste/s", "p50 ms", "p95 ms", "p99 ms");
+        for (String step : STEPS) {
+            Row row = row(step, elapsedSeconds);
+            if (row != null) {
+                out.printf(Locale.ROOT, "%-18s %8d %8d %6.1f%% %10.1f %9.1f %9.1f %9.1f%n",
+                        step, row.count, row.errors, row.errorRate(), row.throughput, row.p50, row.p95, row.p99);
+            }
+        }
+    }
+
+    void appendCsv(StringBuilder csv, int users, double elapsedSeconds, int liveSessions, int peakActive,
+                   int peakWaiting) {
+        for (String step : STEPS) {
+            Row row = row(step, elapsedSeconds);
+            if (row != null) {
+                csv.append(String.format(Locale.ROOT, "%d,%s,%d,%d,%.4f,%.2f,%.2f,%.2f,%.2f,%d,%d,%d%n",
+                        users, step, row.count, row.errors, row.errorRate() / 100, row.throughput,
+                        row.p50, row.p95, row.p99, liveSessions, peakActive, peakWaiting));
+            }
+        }
+    }
+
+    static String csvHeader() {
+        return "users,step,requests,errors,error_rate,throughput,p50_ms,p95_ms,p99_ms,"
+                + "live_sessions,pool_peak_active,pool_peak_waiting\n";
+    }
+
+    private Row row(String step, double elapsedSeconds) {
+        Timer timer = registry.find("loadtest.step").tag("step", step).timer();
+        if (timer == null) {
+            return null;
+        }
+        Counter counter = registry.find("loadtest.errors").tag("step", step).counter();
+        long errors = counter == null ? 0 : (long) counter.count();
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        double[] percentiles = new double[3];
+        ValueAtPercentile[] values = snapshot.percentileValues();
+        for (int i = 0; i < values.length && i < percentiles.length; i++) {
+            percentiles[i] = values[i].value(TimeUnit.MILLISECONDS);
+        }
+        return new Row(timer.count(), errors, timer.count() / elapsedSeconds,
+                percentiles[0], percentiles[1], percentiles[2]);
+    }
+
+    private record Row(long count, long errors, double throughput, double p50, double p95, double p99) {
+        double errorRate() {
+            return count == 0 ? 0 : 100.0 * errors / count;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.soa.loadtest;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempo di avvio dei due modi di produzione: il jar eseguito con {@code java -jar} e il modo {@code faststart} del
+ * Dockerfile (jar estratto con elaborazione AOT, archivio CDS e inizializzazione lazy). Ogni avvio è un processo nuovo,
+ * alternando i due modi; il tempo va dal lancio della JVM alla prima {@code LoginView} servita, cioè la pagina di
+ * bootstrap più la richiesta {@code v-r=init} che costruisce la vista sul server, come in {@link VirtualUser}. In quel
+ * momento si legge anche la memoria residente del processo ({@code VmRSS}, solo su Linux).
+ * <p>
+ * Il jar è {@code startup.jar}, l'applicazione estratta {@code startup.application}; mediana, minimo e massimo di
+ * {@code startup.runs} avvii per modo vanno a video e ogni avvio nel CSV {@code startup.output}. Il database è quello
+ * di application.properties, oppure {@code STARTUP_DATASOURCE_URL} (e {@code _USERNAME}/{@code _PASSWORD}).
+ */
+public final class StartupBenchmark {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final long POLL_MILLIS = 10;
+
+    private record Mode(String name, Path directory, List<String> command) {
+    }
+
+    private record Run(String mode, int run, long startupMillis, long rssKb) {
+    }
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = Integer.getInteger("startup.runs", 5);
+        long timeoutSeconds = Long.getLong("startup.timeout-seconds", 180);
+        Path jar = Path.of(System.getProperty("startup.jar", "target/watchers-1.0-SNAPSHOT.jar")).toAbsolutePath();
+        Path application = Path.of(System.getProperty("startup.application", "target/application")).toAbsolutePath();
+        Path output = Path.of(System.getProperty("startup.output", "target/startup-result.csv"));
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+
+        List<Mode> modes = new ArrayList<>();
+        modes.add(new Mode("default", jar.getParent(), List.of(java.toString(), "-jar", jar.toString())));
+        if (Files.exists(application.resolve("app.jsa"))) {
+            modes.add(new Mode("faststart", application, List.of(java.toString(), "-XX:SharedArchiveFile=app.jsa",
+                    "-Dspring.aot.enabled=true", "-jar", "app.jar", "--spring.profiles.active=faststart")));
+        } else {
+            System.out.println("Modo faststart saltato: " + application.resolve("app.jsa")
+                    + " non esiste, compilare con -Pproduction,faststart");
+        }
+
+        List<Run> results = new ArrayList<>();
+        for (int run = 1; run <= runs; run++) {
+            // Modi alternati: cache del sistema operativo e rumore della macchina pesano allo stesso modo su entrambi
+            for (Mode mode : modes) {
+                Run result = start(mode, run, timeoutSeconds, output.toAbsolutePath().getParent());
+                System.out.printf("%-10s avvio %d: LoginView servita in %d ms, RSS %s%n",
+                        mode.name(), run, result.startupMillis(), megabytes(result.rssKb()));
+                results.add(result);
+            }
+        }
+
+        System.out.printf("%n%-10s %10s %10s %10s %12s%n", "modo", "mediana ms", "min ms", "max ms", "RSS mediana");
+        Map<String, long[]> medians = new LinkedHashMap<>();
+        for (Mode mode : modes) {
+            long[] millis = results.stream().filter(r -> r.mode().equals(mode.name()))
+                    .mapToLong(Run::startupMillis).sorted().toArray();
+            long[] rss = results.stream().filter(r -> r.mode().equals(mode.name()))
+                    .mapToLong(Run::rssKb).sorted().toArray();
+            medians.put(mode.name(), new long[]{median(millis), median(rss)});
+            System.out.printf("%-10s %10d %10d %10d %12s%n", mode.name(), median(millis), millis[0],
+                    millis[millis.length - 1], megabytes(median(rss)));
+        }
+        if (medians.size() == 2) {
+            long[] slow = medians.get("default");
+            long[] fast = medians.get("faststart");
+            System.out.printf("%nfaststart: avvio %.0f%% di default, RSS %.0f%% di default%n",
+                    100.0 * fast[0] / slow[0], slow[1] > 0 ? 100.0 * fast[1] / slow[1] : Double.NaN);
+        }
+
+        StringBuilder csv = new StringBuilder("mode,run,startup_ms,rss_kb\n");
+        results.forEach(r -> csv.append(r.mode()).append(',').append(r.run()).append(',')
+                .append(r.startupMillis()).append(',').append(r.rssKb()).append('\n'));
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        Files.writeString(output, csv);
+        System.out.println("\nRisultati in " + output.toAbsolutePath());
+    }
+
+    private static Run start(Mode mode, int run, long timeoutSeconds, Path logDirectory)
+            throws IOException, InterruptedException {
+        int port = freePort();
+        List<String> command = new ArrayList<>(mode.command());
+        command.add("--server.port=" + port);
+        datasource(command, "STARTUP_DATASOURCE_URL", "spring.datasource.url");
+        datasource(command, "STARTUP_DATASOURCE_USERNAME", "spring.datasource.username");
+        datasource(command, "STARTUP_DATASOURCE_PASSWORD", "spring.datasource.password");
+        // L'output dell'applicazione va in un file per avvio: serve quando un avvio fallisce
+        Files.createDirectories(logDirectory);
+        Path log = logDirectory.resolve("startup-" + mode.name() + "-" + run + ".log");
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .directory(mode.directory().toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        try {
+            awaitLoginView(process, port, start + TimeUnit.SECONDS.toNanos(timeoutSeconds), log);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            return new Run(mode.name(), run, millis, residentKb(process.pid()));
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static void awaitLoginView(Process process, int port, long deadline, Path log)
+            throws IOException, InterruptedException {
+        // Un cookie jar per avvio: la richiesta init deve arrivare nella sessione aperta dalla pagina di bootstrap
+        HttpClient http = HttpClient.newBuilder()
+                .cookieHandler(new CookieManager())
+                .connectTimeout(REQUEST_TIMEOUT)
+                .build();
+        String baseUrl = "http://localhost:" + port;
+        while (true) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Applicazione terminata con codice " + process.exitValue()
+                        + ", vedi " + log);
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("LoginView non servita entro il timeout, vedi " + log);
+            }
+            try {
+                if (ok(http, baseUrl + "/login") && ok(http, baseUrl + "/?v-r=init&location=login")) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Server non ancora in ascolto
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    private static boolean ok(HttpClient http, String url) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(REQUEST_TIMEOUT)
+                .GET()
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+    }
+
+    // Memoria residente in kB da /proc, -1 dove non c'è
+    private static long residentKb(long pid) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", Long.toString(pid), "status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring("VmRSS:".length()).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Non Linux o processo già terminato
+        }
+        return -1;
+    }
+
+    private static void datasource(List<String> command, String variable, String property) {
+        String value = System.getenv(variable);
+        if (value != null && !value.isBlank()) {
+            command.add("--" + property + "=" + value);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static long median(long[] sorted) {
+        return sorted[sorted.length / 2];
+    }
+
+    private static String megabytes(long kb) {
+        return kb < 0 ? "n/d" : (kb / 1024) + " MB";
+    }
+}
@@ -0,0 +1,107 @@
+package com.soa.loadtest;
+
+import com.soa.model.User;
+import com.soa.model.UserPrincipal;
+import com.soa.model.Watch;
+import com.soa.repository.WatchCursor;
+import com.soa.service.WatchService;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Un utente simulato con la propria sessione HTTP. Le viste vengono aperte come fa il client Vaadin: la pagina di
+ * bootstrap e poi la richiesta {@code v-r=init}, che crea la UI e costruisce la vista sul server. Registrazione,
+ * login e consultazione della collezione passano dai servizi che le viste usano, perché gli eventi dei componenti
+ * richiederebbero un browser.
+ */
+final class VirtualUser {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final int PAGE_SIZE = 50;
+    private static final int PAGES = 4;
+
+    private final LoadTest.Target target;
+    private final StageMetrics metrics;
+    private final String email;
+    private final String address;
+    private final String password;
+    private final HttpClient http;
+
+    VirtualUser(LoadTest.Target target, StageMetrics metrics, String email, String address) {
+        this.target = target;
+        this.metrics = metrics;
+        this.email = email;
+        this.address = address;
+        this.password = "pw-" + email;
+        // Un cookie jar per utente: ogni utente simulato tiene aperta la propria VaadinSession
+        this.http = HttpClient.newBuilder()
+                .cookieHandler(new CookieManager())
+                .connectTimeout(TIMEOUT)
+                .build();
+    }
+
+    void run(int iterations) throws Exception {
+        metrics.record("registration-view", () -> openView("registration"));
+        User user = metrics.record("register",
+                () -> target.userService().registerUser(email, password, address).join());
+        target.seedCollection(user);
+
+        for (int i = 0; i < iterations; i++) {
+            metrics.record("login-view", () -> openView("login"));
+            UserPrincipal principal = metrics.record("login",
+                    () -> target.authService().authenticate(email, password, address).join());
+            metrics.record("browse", () -> browse(principal.id()));
+        }
+    }
+
+    private int openView(String location) throws IOException, InterruptedException {
+        get("/" + location);
+        return get("/?v-r=init&location=" + location).length();
+    }
+
+    private String get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(target.baseUrl() + path))
+                .timeout(TIMEOUT)
+                .GET()
+                .build();
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("GET " + path + ": HTTP " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    // Quello che fa la griglia della home: conteggio e qualche pagina keyset scorrendo verso il basso
+    private int browse(Long userId) {
+        WatchService watchService = target.watchService();
+        int rows = watchService.countWatches(userId);
+        WatchCursor cursor = null;
+        for (int page = 0; page < PAGES; page++) {
+            List<Watch> watches = watchService.findPage(userId, cursor, PAGE_SIZE);
+            if (watches.isEmpty()) {
+                break;
+            }
+            watches.forEach(watch -> target.producerCatalog().getById(watch.getProducer().getId()).getName());
+            cursor = WatchService.cursorOf(watches.get(watches.size() - 1));
+        }
+        return rows;
+    }
+
+    static String email(int stage, int user) {
+        return "vu-" + stage + "-" + user + "@loadtest.local";
+    }
+
+    /**
+     * Un indirizzo diverso per ogni utente simulato, come client reali: il limite per indirizzo non li accomuna.
+     */
+    static String address(int stage, int user) {
+        return "10." + stage + "." + (user / 256) + "." + (user % 256);
+    }
+}
@@ -0,0 +1,21 @@
+package com.soa.model;
+
+public enum CaseMaterial {
+    STEEL("Acciaio"),
+    TITANIUM("Titanio"),
+    GOLD("Oro"),
+    PLATINUM("Platino"),
+    CERAMIC("Ceramica"),
+    BRONZE("Bronzo"),
+    CARBON("Carbonio");
+
+    private final String label;
+
+    CaseMaterial(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,50 @@
+package com.soa.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Di quanto è cambiato il valore stimato della collezione di un utente in un periodo (giorno, mese o anno): il valore
+ * alla fine di un periodo è la somma delle variazioni fino a quel periodo compreso. Solo lettura per JPA: le righe
+ * vengono aggiornate da {@code WatchValueService}, con upsert SQL nella stessa transazione delle quotazioni.
+ */
+@Table(name = "collection_value_rollups")
+@Entity
+@Data
+@Immutable
+@IdClass(CollectionValue.Key.class)
+public class CollectionValue {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long userId;
+        private ValueResolution resolution;
+        private LocalDate bucket;
+    }
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    private ValueResolution resolution;
+
+    // Primo giorno del periodo
+    @Id
+    private LocalDate bucket;
+
+    @Column(name = "delta_cents", nullable = false)
+    private long deltaCents;
+}
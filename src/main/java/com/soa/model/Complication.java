@@ -0,0 +1,28 @@
+package com.soa.model;
+
+/**
+ * Salvate come bitmask sull'ordinale (vedi {@link ComplicationsConverter}): i nuovi valori vanno solo aggiunti in
+ * fondo.
+ */
+public enum Complication {
+    DATE("Data"),
+    DAY_DATE("Giorno e data"),
+    CHRONOGRAPH("Cronografo"),
+    GMT("GMT"),
+    MOON_PHASE("Fasi lunari"),
+    POWER_RESERVE("Riserva di carica"),
+    ANNUAL_CALENDAR("Calendario annuale"),
+    PERPETUAL_CALENDAR("Calendario perpetuo"),
+    TOURBILLON("Tourbillon"),
+    MINUTE_REPEATER("Ripetizione minuti");
+
+    private final String label;
+
+    Complication(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,38 @@
+package com.soa.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Le complicazioni di un orologio in una sola colonna intera, un bit per valore.
+ */
+@Converter
+public class ComplicationsConverter implements AttributeConverter<Set<Complication>, Integer> {
+
+    @Override
+    public Integer convertToDatabaseColumn(Set<Complication> complications) {
+        int mask = 0;
+        if (complications != null) {
+            for (Complication complication : complications) {
+                mask |= 1 << complication.ordinal();
+            }
+        }
+        return mask;
+    }
+
+    @Override
+    public Set<Complication> convertToEntityAttribute(Integer mask) {
+        EnumSet<Complication> complications = EnumSet.noneOf(Complication.class);
+        if (mask != null) {
+            for (Complication complication : Complication.values()) {
+                if ((mask & (1 << complication.ordinal())) != 0) {
+                    complications.add(complication);
+                }
+            }
+        }
+        return complications;
+    }
+}
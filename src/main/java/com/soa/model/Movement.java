@@ -0,0 +1,19 @@
+package com.soa.model;
+
+public enum Movement {
+    AUTOMATIC("Automatico"),
+    MANUAL("Carica manuale"),
+    QUARTZ("Quarzo"),
+    SOLAR("Solare"),
+    SPRING_DRIVE("Spring Drive");
+
+    private final String label;
+
+    Movement(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -2,15 +2,25 @@ package com.soa.model;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.Data;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Table(name = "producers")
 @Entity
 @Data
+@BatchSize(size = 50)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "producers")
 public class Producer {
     @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "producers_seq")
+    @SequenceGenerator(name = "producers_seq", sequenceName = "producers_seq", allocationSize = 50)
     @Column
     private Long id;
     @Column
@@ -2,10 +2,14 @@ package com.soa.model;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.Data;
-import org.apache.commons.codec.digest.DigestUtils;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 @Table(name="users")
 @Entity
@@ -13,19 +17,18 @@ import org.apache.commons.codec.digest.DigestUtils;
 public class User {
 
     @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     @Column
     private Long id;
-    @Column
+    @Column(unique = true)
     private String email;
     @Column
     private String passwordSalt;
     @Column
     private String passwordHash;
     @Column
+    @JdbcTypeCode(SqlTypes.SMALLINT)
     private Role role;
 
-    public boolean checkPassword(String password) {
-        return DigestUtils.sha1Hex(password + passwordSalt).equals(passwordHash);
-    }
-
 }
\ No newline at end of file
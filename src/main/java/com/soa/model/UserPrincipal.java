@@ -0,0 +1,9 @@
+package com.soa.model;
+
+import java.io.Serializable;
+
+/**
+ * Utente autenticato così come viene tenuto in sessione: immutabile e senza legami con JPA.
+ */
+public record UserPrincipal(Long id, String email, Role role) implements Serializable {
+}
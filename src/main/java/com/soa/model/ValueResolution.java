@@ -0,0 +1,44 @@
+package com.soa.model;
+
+import java.time.LocalDate;
+
+/**
+ * Granularità delle serie riassuntive del valore. Salvata come ordinale: l'ordine delle costanti non va cambiato.
+ */
+public enum ValueResolution {
+    DAY("Giorno"),
+    MONTH("Mese"),
+    YEAR("Anno");
+
+    private final String label;
+
+    ValueResolution(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Primo giorno del periodo che contiene {@code date}.
+     */
+    public LocalDate bucketOf(LocalDate date) {
+        return switch (this) {
+            case DAY -> date;
+            case MONTH -> date.withDayOfMonth(1);
+            case YEAR -> date.withDayOfYear(1);
+        };
+    }
+
+    /**
+     * Primo giorno del periodo successivo a quello che inizia in {@code bucket}.
+     */
+    public LocalDate next(LocalDate bucket) {
+        return switch (this) {
+            case DAY -> bucket.plusDays(1);
+            case MONTH -> bucket.plusMonths(1);
+            case YEAR -> bucket.plusYears(1);
+        };
+    }
+}
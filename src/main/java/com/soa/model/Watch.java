@@ -2,32 +2,67 @@ package com.soa.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.time.LocalDate;
 
+/**
+ * Le associazioni sono LAZY: ogni caso d'uso sceglie cosa caricare (il dettaglio con il grafo qui sotto), così una
+ * pagina di orologi si legge con un numero fisso di query invece di una per riga. Liste ed export non caricano né il
+ * produttore né la scheda tecnica: del produttore usano solo l'id (che il proxy LAZY conosce già) e lo risolvono da
+ * {@code ProducerCatalog}.
+ * <p>
+ * Orologi, dettagli e produttori stanno nella cache di secondo livello (regioni in {@code ehcache.xml}); le scritture
+ * passano da Hibernate, che aggiorna le voci e invalida le query in cache sulla tabella.
+ */
 @Table(name = "watches")
 @Entity
 @Data
+@NamedEntityGraph(name = Watch.DETAIL_GRAPH, attributeNodes = {
+        @NamedAttributeNode("producer"),
+        @NamedAttributeNode("specifications")
+})
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "watches")
 public class Watch {
 
+    public static final String DETAIL_GRAPH = "Watch.detail";
+    public static final int REFERENCE_ID_LENGTH = 255;
+
     @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "watches_seq")
+    // Come per le altre entità, 50 vale solo senza database: all'avvio vince l'INCREMENT BY della sequence, che la
+    // migrazione R__id_allocation_size allinea a watchers.ids.allocation-size
+    @SequenceGenerator(name = "watches_seq", sequenceName = "watches_seq", allocationSize = 50)
     private Long id;
 
-    @Column(name = "reference_id")
+    @Column(name = "reference_id", length = REFERENCE_ID_LENGTH)
     private String referenceId;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name="producer_id", nullable=false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private Producer producer;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name="user_id", nullable=false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private User user;
 
-    @OneToOne
+    @OneToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private WatchDetail specifications;
 
-    @Column(name = "purchase_date")
+    @Column(name = "purchase_date", nullable = false)
     private LocalDate purchaseDate;
 
+    // Chiave della foto in PhotoStorageService (hash del contenuto e formato), null se non c'è
+    @Column(length = 80)
+    private String photo;
+
 }
@@ -1,17 +1,55 @@
 package com.soa.model;
 
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.Data;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Scheda tecnica di un orologio. Movimento, materiale, diametro e complicazioni sono le faccette filtrabili della
+ * collezione.
+ */
 @Table(name = "watch_details")
 @Entity
 @Data
+@BatchSize(size = 50)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "watch_details")
 public class WatchDetail {
 
     @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "watch_details_seq")
+    @SequenceGenerator(name = "watch_details_seq", sequenceName = "watch_details_seq", allocationSize = 50)
     @Column
     private Long id;
+
+    @Column(name = "case_size_mm")
+    private Integer caseSizeMm;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 32)
+    private Movement movement;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "case_material", length = 32)
+    private CaseMaterial caseMaterial;
+
+    @Convert(converter = ComplicationsConverter.class)
+    @Column(nullable = false)
+    private Set<Complication> complications = EnumSet.noneOf(Complication.class);
+
+    @Column(name = "water_resistance_m")
+    private Integer waterResistanceM;
 }
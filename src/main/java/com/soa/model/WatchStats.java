@@ -0,0 +1,49 @@
+package com.soa.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+
+/**
+ * Quanti orologi ha un utente per produttore e anno di acquisto. Solo lettura per JPA: le righe vengono aggiornate
+ * a ogni scrittura di un {@link Watch} da {@code WatchStatsListener}, con upsert SQL nella stessa transazione.
+ */
+@Table(name = "watch_stats")
+@Entity
+@Data
+@Immutable
+@IdClass(WatchStats.Key.class)
+public class WatchStats {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long userId;
+        private Long producerId;
+        private Integer purchaseYear;
+    }
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "producer_id")
+    private Long producerId;
+
+    @Id
+    @Column(name = "purchase_year")
+    private Integer purchaseYear;
+
+    @Column(name = "watch_count", nullable = false)
+    private long watchCount;
+}
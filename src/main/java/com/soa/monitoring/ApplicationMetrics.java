@@ -0,0 +1,49 @@
+package com.soa.monitoring;
+
+import com.soa.service.AuthService;
+import com.soa.service.PasswordHashingService;
+import com.soa.service.PhotoStorageService;
+import com.soa.service.UserService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Metriche applicative che Spring Boot non registra da solo: sessioni e UI Vaadin del nodo, il pool di hashing
+ * delle password, quello delle letture delle credenziali, quello delle scritture degli utenti e quello delle
+ * miniature delle foto. Repository, HikariCP e
+ * cache sono già coperti dall'autoconfigurazione di Actuator.
+ */
+@Component
+@RequiredArgsConstructor
+public class ApplicationMetrics implements MeterBinder {
+
+    private final SessionInspector sessionInspector;
+    private final PasswordHashingService passwordHashingService;
+    private final PhotoStorageService photoStorageService;
+    private final UserService userService;
+    private final AuthService authService;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("watchers.vaadin.sessions", sessionInspector, SessionInspector::getLiveSessions)
+                .description("Sessioni Vaadin attive")
+                .register(registry);
+        Gauge.builder("watchers.vaadin.uis", sessionInspector, SessionInspector::getLiveUIs)
+                .description("UI Vaadin aperte")
+                .register(registry);
+
+        new ExecutorServiceMetrics(passwordHashingService.executor(), "password-hashing", Tags.empty())
+                .bindTo(registry);
+        new ExecutorServiceMetrics(authService.executor(), "auth-lookups", Tags.empty())
+                .bindTo(registry);
+        new ExecutorServiceMetrics(userService.executor(), "user-writes", Tags.empty())
+                .bindTo(registry);
+        new ExecutorServiceMetrics(photoStorageService.executor(), "photo-thumbnails", Tags.empty())
+                .bindTo(registry);
+    }
+}
@@ -0,0 +1,157 @@
+package com.soa.monitoring;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.server.ServiceInitEvent;
+import com.vaadin.flow.server.VaadinServiceInitListener;
+import com.vaadin.flow.server.VaadinSession;
+import com.vaadin.flow.server.WrappedSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Tiene traccia delle sessioni Vaadin attive e ne stima la dimensione serializzata, per dimensionare i nodi.
+ * <p>
+ * La stima serializza (senza bufferizzare) al massimo {@value #SAMPLE_SIZE} sessioni per report, ciascuna sotto il
+ * proprio lock, e attribuisce i byte agli attributi della sessione HTTP e alle singole UI aperte. Esposto via JMX come
+ * {@code com.soa:name=sessions}.
+ */
+@Slf4j
+@Component
+@ManagedResource(objectName = "com.soa:name=sessions")
+public class SessionInspector implements VaadinServiceInitListener {
+
+    private static final int SAMPLE_SIZE = 50;
+    private static final int TOP_ATTRIBUTES = 10;
+
+    public record AttributeSize(String name, long averageBytes) {
+    }
+
+    public record SessionReport(int liveSessions, int sampledSessions, long averageSessionBytes,
+                                List<AttributeSize> largestAttributes) {
+    }
+
+    private final Set<VaadinSession> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger liveUIs = new AtomicInteger();
+
+    @Override
+    public void serviceInit(ServiceInitEvent event) {
+        event.getSource().addSessionInitListener(sessionEvent -> sessions.add(sessionEvent.getSession()));
+        event.getSource().addSessionDestroyListener(sessionEvent -> sessions.remove(sessionEvent.getSession()));
+        event.getSource().addUIInitListener(uiEvent -> {
+            liveUIs.incrementAndGet();
+            // Il detach arriva sia alla chiusura della UI sia alla distruzione della sessione: contiamo solo il primo
+            AtomicBoolean detached = new AtomicBoolean();
+            uiEvent.getUI().addDetachListener(detachEvent -> {
+                if (detached.compareAndSet(false, true)) {
+                    liveUIs.decrementAndGet();
+                }
+            });
+        });
+    }
+
+    @ManagedAttribute(description = "Sessioni Vaadin attive su questo nodo")
+    public int getLiveSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Letto a ogni scrape di Prometheus: è un contatore aggiornato dagli eventi delle UI, così la lettura non prende
+     * il lock di nessuna sessione e una sessione occupata non blocca lo scrape.
+     */
+    @ManagedAttribute(description = "UI aperte su questo nodo")
+    public int getLiveUIs() {
+        return liveUIs.get();
+    }
+
+    @ManagedOperation(description = "Stima della dimensione serializzata delle sessioni")
+    public String describe() {
+        return report().toString();
+    }
+
+    public SessionReport report() {
+        Map<String, Long> bytesByAttribute = new HashMap<>();
+        long totalBytes = 0;
+        int sampled = 0;
+
+        for (VaadinSession session : sessions) {
+            if (sampled == SAMPLE_SIZE) {
+                break;
+            }
+            session.lock();
+            try {
+                WrappedSession httpSession = session.getSession();
+                if (httpSession == null) {
+                    continue;
+                }
+                for (String name : httpSession.getAttributeNames()) {
+                    long bytes = serializedSize(httpSession.getAttribute(name));
+                    if (bytes >= 0) {
+                        bytesByAttribute.merge(name, bytes, Long::sum);
+                        totalBytes += bytes;
+                    }
+                }
+                // Le UI sono dentro la VaadinSession: le misuriamo a parte per capire quale vista pesa di più
+                for (UI ui : session.getUIs()) {
+                    String route = "ui:" + ui.getInternals().getActiveViewLocation().getPath();
+                    long bytes = serializedSize(ui);
+                    if (bytes >= 0) {
+                        bytesByAttribute.merge(route, bytes, Long::sum);
+                    }
+                }
+                sampled++;
+            } finally {
+                session.unlock();
+            }
+        }
+
+        int divisor = Math.max(1, sampled);
+        List<AttributeSize> largest = bytesByAttribute.entrySet().stream()
+                .map(entry -> new AttributeSize(entry.getKey(), entry.getValue() / divisor))
+                .sorted(Comparator.comparingLong(AttributeSize::averageBytes).reversed())
+                .limit(TOP_ATTRIBUTES)
+                .collect(Collectors.toCollection(ArrayList::new));
+        return new SessionReport(sessions.size(), sampled, totalBytes / divisor, largest);
+    }
+
+    private static long serializedSize(Object value) {
+        CountingOutputStream counter = new CountingOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(counter)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            log.debug("Attributo di sessione non serializzabile: {}", value.getClass().getName(), e);
+            return -1;
+        }
+        return counter.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
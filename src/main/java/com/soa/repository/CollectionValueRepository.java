@@ -0,0 +1,37 @@
+package com.soa.repository;
+
+import com.soa.model.CollectionValue;
+import com.soa.model.ValueResolution;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface CollectionValueRepository extends JpaRepository<CollectionValue, CollectionValue.Key> {
+    // Niente cache delle query: le righe vengono scritte in SQL, Hibernate non saprebbe quando invalidarle
+    @Query("""
+            select new com.soa.repository.ValueChange(v.bucket, v.deltaCents) from CollectionValue v
+            where v.userId = :userId and v.resolution = :resolution and v.bucket between :from and :to
+            order by v.bucket""")
+    List<ValueChange> findChanges(Long userId, ValueResolution resolution, LocalDate from, LocalDate to);
+
+    /**
+     * Valore della collezione prima di {@code date}: le variazioni annuali fino all'anno precedente, quelle mensili
+     * dell'anno fino al mese precedente e quelle giornaliere del mese. Al più qualche decina di righe per anno di
+     * storia, a qualunque granularità si parta.
+     */
+    @Query("""
+            select coalesce(sum(v.deltaCents), 0) from CollectionValue v
+            where v.userId = :userId and (
+                (v.resolution = com.soa.model.ValueResolution.YEAR and v.bucket < :yearStart)
+                or (v.resolution = com.soa.model.ValueResolution.MONTH
+                    and v.bucket >= :yearStart and v.bucket < :monthStart)
+                or (v.resolution = com.soa.model.ValueResolution.DAY and v.bucket >= :monthStart and v.bucket < :date))
+            """)
+    long sumBefore(Long userId, LocalDate yearStart, LocalDate monthStart, LocalDate date);
+
+    @Query("select min(v.bucket) from CollectionValue v where v.userId = :userId "
+            + "and v.resolution = com.soa.model.ValueResolution.YEAR")
+    LocalDate findFirstYear(Long userId);
+}
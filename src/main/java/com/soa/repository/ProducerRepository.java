@@ -0,0 +1,7 @@
+package com.soa.repository;
+
+import com.soa.model.Producer;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ProducerRepository extends JpaRepository<Producer, Long> {
+}
@@ -0,0 +1,10 @@
+package com.soa.repository;
+
+import com.soa.model.Role;
+
+/**
+ * Proiezione minima di {@link com.soa.model.User} per il login: solo ciò che serve a verificare la password e a
+ * configurare la sessione.
+ */
+public record UserCredentials(Long id, String passwordHash, String passwordSalt, Role role) {
+}
@@ -1,8 +1,43 @@
 package com.soa.repository;
 
 import com.soa.model.User;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+public interface UserRepository extends JpaRepository<User, Long> {
+
+    String CREDENTIALS_CACHE = "credentials";
 
-public interface UserRepository extends JpaRepository<User, Integer> {
     User findByEmail(String email);
+
+    /**
+     * Lookup del login. Il risultato, anche quando l'email non esiste, resta in cache finché un salvataggio
+     * dell'utente o un cambio password non lo invalida.
+     */
+    @Cacheable(cacheNames = CREDENTIALS_CACHE)
+    Optional<UserCredentials> findCredentialsByEmail(String email);
+
+    @Override
+    @CacheEvict(cacheNames = CREDENTIALS_CACHE, key = "#p0.email")
+    <S extends User> S save(S user);
+
+    /**
+     * Insert immediato: un'email già presente fallisce qui, sul vincolo unico, con
+     * {@link org.springframework.dao.DataIntegrityViolationException}.
+     */
+    @Override
+    @CacheEvict(cacheNames = CREDENTIALS_CACHE, key = "#p0.email")
+    <S extends User> S saveAndFlush(S user);
+
+    @Transactional
+    @Modifying
+    @CacheEvict(cacheNames = CREDENTIALS_CACHE, key = "#email")
+    @Query("update User u set u.passwordSalt = :salt, u.passwordHash = :hash where u.email = :email")
+    int updatePassword(String email, String salt, String hash);
 }
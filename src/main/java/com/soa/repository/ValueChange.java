@@ -0,0 +1,10 @@
+package com.soa.repository;
+
+import java.time.LocalDate;
+
+/**
+ * Variazione del valore della collezione in un periodo, letta senza caricare le entità: un grafico ne legge qualche
+ * centinaio.
+ */
+public record ValueChange(LocalDate bucket, long deltaCents) {
+}
@@ -0,0 +1,10 @@
+package com.soa.repository;
+
+import java.time.LocalDate;
+
+/**
+ * Chiave di ordinamento di un orologio nella collezione, usata per la paginazione keyset su
+ * {@code (user_id, purchase_date, id)}.
+ */
+public record WatchCursor(LocalDate purchaseDate, Long id) {
+}
@@ -0,0 +1,15 @@
+package com.soa.repository;
+
+import com.soa.model.CaseMaterial;
+import com.soa.model.Complication;
+import com.soa.model.Movement;
+
+import java.util.Set;
+
+/**
+ * Quello che serve all'indice delle faccette per un orologio; i campi della scheda sono null se l'orologio non ne ha
+ * una.
+ */
+public record WatchFacetRow(Long watchId, Long producerId, Integer caseSizeMm, Movement movement,
+                            CaseMaterial caseMaterial, Set<Complication> complications) {
+}
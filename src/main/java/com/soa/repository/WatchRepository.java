@@ -0,0 +1,163 @@
+package com.soa.repository;
+
+import com.soa.model.Watch;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Le liste della collezione sono ordinate per {@code purchase_date desc, id desc} e paginate per chiave
+ * (seek) invece che per OFFSET: ogni pagina parte dall'ultima chiave letta, quindi costa uguale a
+ * qualsiasi profondità.
+ */
+public interface WatchRepository extends JpaRepository<Watch, Long> {
+
+    // Conteggio, dettaglio e pagine passano dalla query cache: i risultati sono solo id, le entità arrivano dalla cache
+    // di secondo livello. Qualsiasi scrittura su watches invalida le query in cache.
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    long countByUserId(Long userId);
+
+    @EntityGraph(Watch.DETAIL_GRAPH)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    Optional<Watch> findDetailById(Long id);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("""
+            select w from Watch w
+            where w.user.id = :userId
+            order by w.purchaseDate desc, w.id desc""")
+    List<Watch> findFirstPage(Long userId, Limit limit);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("""
+            select w from Watch w
+            where w.user.id = :userId
+              and (w.purchaseDate < :purchaseDate or (w.purchaseDate = :purchaseDate and w.id < :id))
+            order by w.purchaseDate desc, w.id desc""")
+    List<Watch> findPageAfter(Long userId, LocalDate purchaseDate, Long id, Limit limit);
+
+    /**
+     * Chiave della riga che segue di {@code skip} posizioni l'inizio della collezione. Legge solo l'indice
+     * {@code (user_id, purchase_date, id)}: il database scorre {@code skip} voci, ma senza toccare le righe e con un
+     * solo round trip, e restituisce una chiave sola.
+     */
+    @Query("""
+            select new com.soa.repository.WatchCursor(w.purchaseDate, w.id) from Watch w
+            where w.user.id = :userId
+            order by w.purchaseDate desc, w.id desc
+            offset :skip rows fetch first 1 rows only""")
+    Optional<WatchCursor> findCursorAt(Long userId, int skip);
+
+    /**
+     * Come {@link #findCursorAt} ma partendo dalla riga che segue la chiave {@code (purchaseDate, id)}.
+     */
+    @Query("""
+            select new com.soa.repository.WatchCursor(w.purchaseDate, w.id) from Watch w
+            where w.user.id = :userId
+              and (w.purchaseDate < :purchaseDate or (w.purchaseDate = :purchaseDate and w.id < :id))
+            order by w.purchaseDate desc, w.id desc
+            offset :skip rows fetch first 1 rows only""")
+    Optional<WatchCursor> findCursorAfterAt(Long userId, LocalDate purchaseDate, Long id, int skip);
+
+    /**
+     * Primo livello della ricerca (solo PostgreSQL, indice della migrazione V11): referenze che iniziano col testo,
+     * in ordine alfabetico. {@code prefix} è già minuscolo, con i caratteri speciali di LIKE escapati e la {@code %}
+     * finale. L'indice è già in quest'ordine, quindi la query si ferma dopo {@code limit} voci anche per un solo
+     * carattere.
+     */
+    @Query(nativeQuery = true, value = """
+            select w.* from watches w
+            where w.user_id = :userId
+              and lower(w.reference_id) collate "C" like :prefix escape '\\'
+            order by lower(w.reference_id) collate "C", w.id
+            limit :limit""")
+    List<Watch> searchByReferencePrefix(Long userId, String prefix, int limit);
+
+    /**
+     * Referenze che contengono il testo, le più simili prima (indice trigram della migrazione V3). {@code contains} è
+     * già un pattern LIKE escapato; con meno di 3 caratteri l'indice trigram non serve e la query scorre la collezione.
+     */
+    @Query(nativeQuery = true, value = """
+            select w.* from watches w
+            where w.user_id = :userId
+              and w.reference_id ilike :contains escape '\\'
+            order by similarity(w.reference_id, :term) desc, w.purchase_date desc, w.id desc
+            limit :limit""")
+    List<Watch> searchByReferenceContaining(Long userId, String term, String contains, int limit);
+
+    /**
+     * Orologi dei produttori indicati, che non possono essere una lista vuota, nell'ordine della collezione.
+     */
+    @Query(nativeQuery = true, value = """
+            select w.* from watches w
+            where w.user_id = :userId
+              and w.producer_id in (:producerIds)
+            order by w.purchase_date desc, w.id desc
+            limit :limit""")
+    List<Watch> searchByProducers(Long userId, Collection<Long> producerIds, int limit);
+
+    /**
+     * Referenze simili secondo pg_trgm (errori di battitura), le più simili prima. Quante righe l'indice candida
+     * dipende dalla soglia: vedi {@link #setSimilarityThreshold}.
+     */
+    @Query(nativeQuery = true, value = """
+            select w.* from watches w
+            where w.user_id = :userId
+              and w.reference_id % :term
+            order by similarity(w.reference_id, :term) desc, w.purchase_date desc, w.id desc
+            limit :limit""")
+    List<Watch> searchSimilarReferences(Long userId, String term, int limit);
+
+    /**
+     * Soglia dell'operatore {@code %} fino alla fine della transazione corrente, senza toccare le altre che useranno
+     * la stessa connessione del pool.
+     */
+    @Query(nativeQuery = true, value = "select set_config('pg_trgm.similarity_threshold', :threshold, true)")
+    String setSimilarityThreshold(String threshold);
+
+    /**
+     * Righe per l'indice delle faccette, nell'ordine della collezione: la posizione di ogni riga è il suo bit nelle
+     * bitmap. Va consumato dentro una transazione e chiuso.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            select new com.soa.repository.WatchFacetRow(w.id, w.producer.id, d.caseSizeMm, d.movement,
+                                                        d.caseMaterial, d.complications)
+            from Watch w left join w.specifications d
+            where w.user.id = :userId
+            order by w.purchaseDate desc, w.id desc""")
+    Stream<WatchFacetRow> streamFacetRows(Long userId);
+
+    /**
+     * Cursore sull'intera collezione per l'export: le righe arrivano dal driver a blocchi di {@code fetchSize}
+     * invece di essere materializzate tutte, senza join: l'export scrive solo colonne di {@code watches}. Va consumato
+     * dentro una transazione e chiuso.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            select w from Watch w
+            where w.user.id = :userId
+            order by w.purchaseDate desc, w.id desc""")
+    Stream<Watch> streamByUserId(Long userId);
+
+    /**
+     * Se l'utente ha un orologio con questa foto: le foto si servono solo a chi le ha associate a un orologio.
+     */
+    boolean existsByUserIdAndPhoto(Long userId, String photo);
+}
@@ -0,0 +1,11 @@
+package com.soa.repository;
+
+import com.soa.model.WatchStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface WatchStatsRepository extends JpaRepository<WatchStats, WatchStats.Key> {
+    // Niente cache delle query: le righe vengono scritte in SQL, Hibernate non saprebbe quando invalidarle
+    List<WatchStats> findByUserId(Long userId);
+}
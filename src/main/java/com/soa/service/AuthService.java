@@ -1,20 +1,46 @@
 package com.soa.service;
 
 import com.soa.model.Role;
-import com.soa.model.User;
+import com.soa.model.UserPrincipal;
+import com.soa.repository.UserCredentials;
 import com.soa.repository.UserRepository;
+import com.soa.views.dashboard.DashboardView;
 import com.soa.views.home.HomeView;
+import com.soa.views.value.ValueHistoryView;
 import com.vaadin.flow.component.Component;
-import com.vaadin.flow.router.RouteConfiguration;
 import com.vaadin.flow.server.VaadinSession;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
+/**
+ * Login e rotte autorizzate. La lettura delle credenziali gira su un piccolo pool dedicato
+ * ({@code watchers.auth.lookup-threads}) e la verifica della password sul pool di {@link PasswordHashingService}: un
+ * database lento non blocca il thread della UI né il lock della sessione. La coda delle letture non ha limite
+ * proprio: a monte la limita già {@link LoginThrottle}.
+ */
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class AuthService {
 
     public record AuthorizedRoute(String route, String name, Class<? extends Component> view) {}
@@ -25,41 +51,167 @@ public class AuthService {
         }
     }
 
+    public static final String SESSION_PRINCIPAL = UserPrincipal.class.getName();
+
+    // Tabelle delle rotte per ruolo, calcolate una volta sola e condivise da tutte le sessioni
+    private static final Map<Role, List<AuthorizedRoute>> ROUTES = buildRoutes();
+    private static final Map<Role, Set<Class<? extends Component>>> VIEWS = ROUTES.entrySet().stream()
+            .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, entry -> entry.getValue().stream()
+                    .map(AuthorizedRoute::view)
+                    .collect(Collectors.toUnmodifiableSet())));
+
     private final UserRepository userRepository;
+    private final UserService userService;
+    private final PasswordHashingService passwordHashingService;
+    private final LoginThrottle loginThrottle;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolExecutor lookupExecutor;
+
+    public AuthService(UserRepository userRepository, UserService userService,
+                       PasswordHashingService passwordHashingService, LoginThrottle loginThrottle,
+                       MeterRegistry meterRegistry, @Value("${watchers.auth.lookup-threads:4}") int lookupThreads) {
+        this.userRepository = userRepository;
+        this.userService = userService;
+        this.passwordHashingService = passwordHashingService;
+        this.loginThrottle = loginThrottle;
+        this.meterRegistry = meterRegistry;
+        this.lookupExecutor = new ThreadPoolExecutor(lookupThreads, lookupThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), lookupThreads());
+    }
+
+    /**
+     * Legge e verifica le credenziali fuori dal thread chiamante, senza toccare la sessione: il chiamante completa il
+     * login con {@link #login(UserPrincipal)} dal thread della UI. Il future fallisce con {@link AuthException} se le
+     * credenziali non sono valide, con {@link LoginThrottle.ThrottledException} se ci sono stati troppi tentativi per
+     * l'email o per {@code clientAddress} (che può essere {@code null} se non è noto), con l'eccezione del database se
+     * la lettura non riesce.
+     */
+    public CompletableFuture<UserPrincipal> authenticate(String username, String password, String clientAddress) {
+        Timer.Sample total = Timer.start(meterRegistry);
+        try {
+            loginThrottle.check(username, clientAddress);
+        } catch (LoginThrottle.ThrottledException e) {
+            total.stop(meterRegistry.timer("watchers.auth.authenticate", "outcome", outcome(e)));
+            return CompletableFuture.failedFuture(e);
+        }
 
-    public void authenticate(String username, String password) throws AuthException {
-        User user = userRepository.findByEmail(username);
+        Timer.Sample lookup = Timer.start(meterRegistry);
+        CompletableFuture<UserCredentials> credentialsLookup = CompletableFuture
+                .supplyAsync(() -> userRepository.findCredentialsByEmail(username).orElse(null), lookupExecutor)
+                .whenComplete((found, error) -> lookup.stop(meterRegistry.timer("watchers.auth.lookup")));
 
-        if (user != null && user.checkPassword(password)) {
-            // Salva l'utente in sessione
-            VaadinSession.getCurrent().setAttribute(User.class, user);
+        CompletableFuture<UserPrincipal> result = credentialsLookup.thenCompose(credentials -> {
+            // Anche un'email sconosciuta paga una verifica completa: il tempo di risposta non rivela chi è registrato
+            Timer.Sample hash = Timer.start(meterRegistry);
+            CompletableFuture<PasswordHashingService.Verification> verification = credentials == null
+                    ? passwordHashingService.verifyUnknown(password)
+                    : passwordHashingService.verify(password, credentials.passwordSalt(), credentials.passwordHash());
+            return verification
+                    .whenComplete((outcome, error) -> hash.stop(meterRegistry.timer("watchers.auth.hash")))
+                    .thenApply(outcome -> {
+                        if (outcome == PasswordHashingService.Verification.INVALID) {
+                            throw new CompletionException(new AuthException("Credenziali non valide"));
+                        }
+                        if (outcome == PasswordHashingService.Verification.VALID_NEEDS_REHASH) {
+                            // Hash di una versione precedente: lo aggiorniamo ora che conosciamo la password
+                            userService.changePassword(username, password).exceptionally(e -> {
+                                log.warn("Aggiornamento hash non riuscito per {}", username, e);
+                                return null;
+                            });
+                        }
 
-            // Configura le rotte autorizzate
-            createRoutes(user.getRole());
-        } else {
-            throw new AuthException("Credenziali non valide");
+                        return new UserPrincipal(credentials.id(), username, credentials.role());
+                    });
+        });
+
+        return result.whenComplete((principal, error) ->
+                total.stop(meterRegistry.timer("watchers.auth.authenticate", "outcome", outcome(error))));
+    }
+
+    static String outcome(Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        if (cause == null) {
+            return "success";
         }
+        if (cause instanceof PasswordHashingService.HashingBusyException) {
+            return "busy";
+        }
+        if (cause instanceof LoginThrottle.ThrottledException) {
+            return "throttled";
+        }
+        return cause instanceof AuthException || cause instanceof IllegalArgumentException ? "failure" : "error";
+    }
+
+    /**
+     * Da chiamare con il lock della sessione (ad esempio dentro {@code UI.access}).
+     */
+    public void login(UserPrincipal principal) {
+        // Salva l'utente in sessione: le rotte sono condivise, l'autorizzazione dipende solo dal ruolo
+        VaadinSession session = VaadinSession.getCurrent();
+        session.setAttribute(UserPrincipal.class, principal);
+        // Anche nella sessione HTTP, per le richieste che non passano da Vaadin (foto)
+        session.getSession().setAttribute(SESSION_PRINCIPAL, principal);
     }
 
-    private void createRoutes(Role role) {
-        // Aggiunge quelle permesse
-        getAuthorizedRoutes(role).forEach(route ->
-                RouteConfiguration.forSessionScope().setRoute(route.route(), route.view())
-        );
+    /**
+     * L'utente autenticato nella sessione HTTP, per i controller fuori da Vaadin.
+     *
+     * @return l'utente, o {@code null} se la richiesta non ha una sessione autenticata
+     */
+    public static UserPrincipal principalOf(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        return session == null ? null : (UserPrincipal) session.getAttribute(SESSION_PRINCIPAL);
     }
 
     public List<AuthorizedRoute> getAuthorizedRoutes(Role role) {
-        var routes = new ArrayList<AuthorizedRoute>();
-
-        switch (role) {
-            case USER -> routes.add(new AuthorizedRoute("home", "Home", HomeView.class));
-            case ADMIN -> {
-                routes.add(new AuthorizedRoute("home", "Home", HomeView.class));
-                // Qui puoi aggiungere rotte extra per admin, esempio:
-                // routes.add(new AuthorizedRoute("admin", "Admin Dashboard", AdminView.class));
+        return ROUTES.get(role);
+    }
+
+    public boolean isAuthorized(Role role, Class<?> view) {
+        return VIEWS.get(role).contains(view);
+    }
+
+    /**
+     * Il pool delle letture delle credenziali, esposto solo per le metriche.
+     */
+    public ThreadPoolExecutor executor() {
+        return lookupExecutor;
+    }
+
+    private static ThreadFactory lookupThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "auth-lookups-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    void shutdown() {
+        lookupExecutor.shutdown();
+    }
+
+    private static Map<Role, List<AuthorizedRoute>> buildRoutes() {
+        var routes = new EnumMap<Role, List<AuthorizedRoute>>(Role.class);
+        for (Role role : Role.values()) {
+            var roleRoutes = new ArrayList<AuthorizedRoute>();
+            switch (role) {
+                case USER -> {
+                    roleRoutes.add(new AuthorizedRoute("home", "Home", HomeView.class));
+                    roleRoutes.add(new AuthorizedRoute("dashboard", "Statistiche", DashboardView.class));
+                    roleRoutes.add(new AuthorizedRoute("value", "Valore", ValueHistoryView.class));
+                }
+                case ADMIN -> {
+                    roleRoutes.add(new AuthorizedRoute("home", "Home", HomeView.class));
+                    roleRoutes.add(new AuthorizedRoute("dashboard", "Statistiche", DashboardView.class));
+                    roleRoutes.add(new AuthorizedRoute("value", "Valore", ValueHistoryView.class));
+                    // Qui puoi aggiungere rotte extra per admin, esempio:
+                    // roleRoutes.add(new AuthorizedRoute("admin", "Admin Dashboard", AdminView.class));
+                }
             }
+            routes.put(role, List.copyOf(roleRoutes));
         }
-
-        return routes;
+        return Collections.unmodifiableMap(routes);
     }
 }
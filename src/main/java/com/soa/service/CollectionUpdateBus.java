@@ -0,0 +1,93 @@
+package com.soa.service;
+
+import com.vaadin.flow.shared.Registration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Avvisa le viste aperte quando la collezione del loro utente cambia: orologi aggiunti, modificati o importati da
+ * un'altra scheda o sessione, anche su un altro nodo ({@link RemoteInvalidationEvent}).
+ * <p>
+ * Le modifiche non vengono inoltrate una per una: ogni {@code watchers.live-updates.interval-millis} gli utenti
+ * cambiati nel frattempo vengono avvisati una volta sola. Un import di diecimila righe, scritto a blocchi, diventa
+ * così un aggiornamento per intervallo per vista invece di uno per blocco, e il costo in push e CPU resta limitato
+ * qualunque sia il ritmo delle scritture. I listener girano sul thread dello scheduler e devono solo accodare il
+ * lavoro, tipicamente con {@code UI.access}.
+ */
+@Slf4j
+@Service
+public class CollectionUpdateBus {
+
+    private final Map<Long, Set<Runnable>> subscribers = new ConcurrentHashMap<>();
+    private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Registra {@code listener} per le modifiche alla collezione di {@code userId}, finché non viene rimosso.
+     */
+    public Registration subscribe(Long userId, Runnable listener) {
+        subscribers.compute(userId, (id, listeners) -> {
+            Set<Runnable> updated = listeners == null ? ConcurrentHashMap.newKeySet() : listeners;
+            updated.add(listener);
+            return updated;
+        });
+        return () -> subscribers.computeIfPresent(userId, (id, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+
+    /**
+     * Avvisa le viste di {@code userId} al prossimo giro anche senza una scrittura, ad esempio quando un dato
+     * derivato dalla collezione è stato ricalcolato in ritardo.
+     */
+    public void notifyChanged(Long userId) {
+        if (subscribers.containsKey(userId)) {
+            changed.add(userId);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onWatchesChanged(WatchesChangedEvent event) {
+        notifyChanged(event.userId());
+    }
+
+    @EventListener
+    void onRemoteInvalidation(RemoteInvalidationEvent event) {
+        if (event.invalidation().isAll(Invalidation.Kind.COLLECTION)) {
+            changed.addAll(subscribers.keySet());
+        } else {
+            event.invalidation().ids(Invalidation.Kind.COLLECTION).stream()
+                    .filter(subscribers::containsKey)
+                    .forEach(changed::add);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${watchers.live-updates.interval-millis:500}")
+    void flush() {
+        if (changed.isEmpty()) {
+            return;
+        }
+        List<Long> users = new ArrayList<>(changed);
+        // Una modifica arrivata dopo la copia resta per il prossimo giro, o è coperta dall'avviso che parte ora
+        changed.removeAll(users);
+        for (Long userId : users) {
+            for (Runnable listener : subscribers.getOrDefault(userId, Set.of())) {
+                try {
+                    listener.run();
+                } catch (RuntimeException e) {
+                    // Una vista chiusa male non deve fermare le altre
+                    log.debug("Aggiornamento della collezione {} non consegnato", userId, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.soa.service;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lettura CSV un record alla volta, per gli import della collezione ({@link WatchRecords}) e delle quotazioni
+ * ({@link WatchValueService}). Un campo tra virgolette può contenere virgole, virgolette raddoppiate e a capo, fino a
+ * {@value #MAX_RECORD_LINES} righe per record; le righe vuote tra un record e l'altro vengono saltate.
+ * <p>
+ * Un record con le virgolette non chiuse diventa un {@link Record} con {@link Record#error()} e la lettura prosegue
+ * dalla riga successiva al limite.
+ */
+final class CsvRecordReader implements Closeable {
+
+    static final int MAX_RECORD_LINES = 100;
+
+    /**
+     * I campi di un record, così come sono scritti tra le virgole, e la riga in cui inizia. Se {@code error} non è
+     * {@code null} il record non si è potuto leggere e {@code fields} è vuota.
+     */
+    record Record(long line, List<String> fields, String error) {
+    }
+
+    private final BufferedReader reader;
+    private long line;
+
+    CsvRecordReader(InputStream in) {
+        reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return il prossimo record, oppure {@code null} a fine file
+     */
+    Record next() throws IOException {
+        String text;
+        do {
+            text = reader.readLine();
+            line++;
+            if (text == null) {
+                return null;
+            }
+        } while (text.isBlank());
+        if (line == 1) {
+            text = text.replace("\uFEFF", "");
+        }
+
+        long first = line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        // Un a capo dentro le virgolette fa parte del campo: il record continua sulla riga successiva
+        boolean open = split(text, false, fields, current);
+        while (open) {
+            if (line - first + 1 == MAX_RECORD_LINES) {
+                return new Record(first, List.of(), "Virgolette non chiuse entro " + MAX_RECORD_LINES + " righe");
+            }
+            text = reader.readLine();
+            if (text == null) {
+                return new Record(first, List.of(), "Virgolette non chiuse a fine file");
+            }
+            line++;
+            current.append('\n');
+            open = split(text, true, fields, current);
+        }
+        return new Record(first, fields, null);
+    }
+
+    /**
+     * Aggiunge a {@code fields} i campi di {@code text}, partendo dentro le virgolette se {@code quoted}.
+     *
+     * @return {@code true} se la riga finisce dentro le virgolette: il campo aperto resta in {@code current}
+     */
+    private static boolean split(String text, boolean quoted, List<String> fields, StringBuilder current) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            return true;
+        }
+        fields.add(current.toString());
+        current.setLength(0);
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,151 @@
+package com.soa.service;
+
+import com.soa.model.Complication;
+import com.soa.repository.WatchFacetRow;
+import com.soa.service.WatchFacetService.Facet;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Indice delle faccette della collezione di un utente. Ogni orologio ha una posizione, il suo indice nell'ordine
+ * della collezione; per ogni valore di ogni faccetta c'è una bitmap compressa delle posizioni che lo hanno. Filtri e
+ * conteggi sono unioni e intersezioni di bitmap, senza tornare sul database.
+ * <p>
+ * Immutabile dopo la costruzione, quindi condivisibile tra le UI dello stesso utente.
+ */
+final class FacetIndex {
+
+    private final long[] watchIds;
+    private final Map<Facet, Map<String, RoaringBitmap>> bitmaps;
+
+    private FacetIndex(long[] watchIds, Map<Facet, Map<String, RoaringBitmap>> bitmaps) {
+        this.watchIds = watchIds;
+        this.bitmaps = bitmaps;
+    }
+
+    static FacetIndex build(Iterator<WatchFacetRow> rows) {
+        Map<Facet, Map<String, RoaringBitmap>> bitmaps = new EnumMap<>(Facet.class);
+        for (Facet facet : Facet.values()) {
+            bitmaps.put(facet, new HashMap<>());
+        }
+
+        long[] ids = new long[1024];
+        int position = 0;
+        while (rows.hasNext()) {
+            WatchFacetRow row = rows.next();
+            if (position == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[position] = row.watchId();
+            if (row.producerId() != null) {
+                add(bitmaps, Facet.PRODUCER, row.producerId().toString(), position);
+            }
+            if (row.movement() != null) {
+                add(bitmaps, Facet.MOVEMENT, row.movement().name(), position);
+            }
+            if (row.caseMaterial() != null) {
+                add(bitmaps, Facet.CASE_MATERIAL, row.caseMaterial().name(), position);
+            }
+            WatchFacetService.CaseSize caseSize = WatchFacetService.CaseSize.of(row.caseSizeMm());
+            if (caseSize != null) {
+                add(bitmaps, Facet.CASE_SIZE, caseSize.name(), position);
+            }
+            if (row.complications() != null) {
+                for (Complication complication : row.complications()) {
+                    add(bitmaps, Facet.COMPLICATION, complication.name(), position);
+                }
+            }
+            position++;
+        }
+
+        // Le posizioni arrivano in ordine: le bitmap si riempiono in coda e poi si compattano in run dove conviene
+        bitmaps.values().forEach(values -> values.values().forEach(RoaringBitmap::runOptimize));
+        return new FacetIndex(Arrays.copyOf(ids, position), bitmaps);
+    }
+
+    private static void add(Map<Facet, Map<String, RoaringBitmap>> bitmaps, Facet facet, String value, int position) {
+        bitmaps.get(facet).computeIfAbsent(value, key -> new RoaringBitmap()).add(position);
+    }
+
+    int size() {
+        return watchIds.length;
+    }
+
+    Map<String, RoaringBitmap> values(Facet facet) {
+        return bitmaps.get(facet);
+    }
+
+    /**
+     * Posizioni che soddisfano la selezione: OR tra i valori di una faccetta, AND tra faccette diverse. La faccetta
+     * {@code excluded} non viene applicata, così i suoi conteggi mostrano le alternative alla scelta corrente.
+     *
+     * @return le posizioni, o {@code null} se nessun filtro si applica (tutta la collezione)
+     */
+    RoaringBitmap matching(Map<Facet, Set<String>> selection, Facet excluded) {
+        RoaringBitmap result = null;
+        for (Map.Entry<Facet, Set<String>> entry : selection.entrySet()) {
+            if (entry.getKey() == excluded || entry.getValue().isEmpty()) {
+                continue;
+            }
+            Map<String, RoaringBitmap> values = bitmaps.get(entry.getKey());
+            RoaringBitmap union = new RoaringBitmap();
+            for (String value : entry.getValue()) {
+                RoaringBitmap bitmap = values.get(value);
+                if (bitmap != null) {
+                    union.or(bitmap);
+                }
+            }
+            if (result == null) {
+                result = union;
+            } else {
+                result.and(union);
+            }
+        }
+        return result;
+    }
+
+    static int count(RoaringBitmap matching, RoaringBitmap value) {
+        return matching == null ? value.getCardinality() : RoaringBitmap.andCardinality(matching, value);
+    }
+
+    /**
+     * Id degli orologi tra le posizioni {@code matching}, dalla {@code offset}-esima, nell'ordine della collezione.
+     */
+    long[] watchIds(RoaringBitmap matching, int offset, int limit) {
+        if (matching == null) {
+            int from = Math.min(offset, watchIds.length);
+            return Arrays.copyOfRange(watchIds, from, Math.min(from + limit, watchIds.length));
+        }
+        if (offset >= matching.getCardinality()) {
+            return new long[0];
+        }
+        long[] page = new long[limit];
+        int count = 0;
+        PeekableIntIterator positions = matching.getIntIterator();
+        positions.advanceIfNeeded(matching.select(offset));
+        while (count < limit && positions.hasNext()) {
+            page[count++] = watchIds[positions.next()];
+        }
+        return count == limit ? page : Arrays.copyOf(page, count);
+    }
+
+    /**
+     * Memoria occupata, in byte, per dimensionare la cache degli indici.
+     */
+    long sizeInBytes() {
+        long bytes = (long) watchIds.length * Long.BYTES;
+        for (Map<String, RoaringBitmap> values : bitmaps.values()) {
+            for (RoaringBitmap bitmap : values.values()) {
+                bytes += bitmap.getLongSizeInBytes();
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,183 @@
+package com.soa.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Dati cambiati su un nodo che gli altri nodi devono togliere dalle proprie cache: per ogni tipo le chiavi toccate,
+ * oppure tutte. Più invalidazioni si fondono in una sola, e una raffica di scritture diventa un unico messaggio.
+ * <p>
+ * Sul canale viaggia come testo, una riga per tipo ({@code U 12 15}, {@code C mario@example.com}, {@code P *}),
+ * preceduta dall'id del nodo che l'ha scritta. Se il testo supera il limite di una NOTIFY i tipi con più chiavi
+ * diventano "tutte": gli altri nodi invalidano più del necessario, mai meno.
+ * <p>
+ * Non thread-safe: ogni transazione e il thread in ascolto hanno la propria istanza.
+ */
+public final class Invalidation {
+
+    public enum Kind {
+        /** Collezione di un utente, per id utente: indici delle faccette e query in cache. */
+        COLLECTION('U'),
+        /** Orologi, per id: cache di secondo livello. */
+        WATCH('W'),
+        /** Schede tecniche, per id: cache di secondo livello. */
+        WATCH_DETAIL('D'),
+        /** Produttori, per id: catalogo in memoria e cache di secondo livello. */
+        PRODUCER('P'),
+        /** Credenziali del login, per email. */
+        CREDENTIALS('C');
+
+        private final char code;
+
+        Kind(char code) {
+            this.code = code;
+        }
+
+        static Kind of(char code) {
+            for (Kind kind : values()) {
+                if (kind.code == code) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Un messaggio ricevuto: il nodo che l'ha mandato e le invalidazioni.
+     */
+    public record Message(String node, Invalidation invalidation) {
+    }
+
+    private static final String ALL = "*";
+
+    private final Map<Kind, Set<String>> keys = new EnumMap<>(Kind.class);
+
+    public static Invalidation of(Kind kind, Object key) {
+        return new Invalidation().add(kind, key);
+    }
+
+    /**
+     * Tutto, di ogni tipo: per un nodo che potrebbe aver perso dei messaggi.
+     */
+    public static Invalidation everything() {
+        Invalidation invalidation = new Invalidation();
+        for (Kind kind : Kind.values()) {
+            invalidation.addAll(kind);
+        }
+        return invalidation;
+    }
+
+    public Invalidation add(Kind kind, Object key) {
+        Set<String> current = keys.computeIfAbsent(kind, k -> new LinkedHashSet<>());
+        if (!current.contains(ALL)) {
+            current.add(key.toString());
+        }
+        return this;
+    }
+
+    public Invalidation addAll(Kind kind) {
+        keys.put(kind, new LinkedHashSet<>(Set.of(ALL)));
+        return this;
+    }
+
+    public Invalidation merge(Invalidation other) {
+        other.keys.forEach((kind, otherKeys) -> {
+            if (otherKeys.contains(ALL)) {
+                addAll(kind);
+            } else {
+                otherKeys.forEach(key -> add(kind, key));
+            }
+        });
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return keys.isEmpty();
+    }
+
+    public boolean contains(Kind kind) {
+        return keys.containsKey(kind);
+    }
+
+    /**
+     * @return {@code true} se vanno invalidate tutte le chiavi del tipo
+     */
+    public boolean isAll(Kind kind) {
+        return keys.getOrDefault(kind, Set.of()).contains(ALL);
+    }
+
+    /**
+     * Le chiavi del tipo, vuote se il tipo non c'è o se vanno invalidate tutte ({@link #isAll}).
+     */
+    public Set<String> keys(Kind kind) {
+        return isAll(kind) ? Set.of() : keys.getOrDefault(kind, Set.of());
+    }
+
+    public Set<Long> ids(Kind kind) {
+        return keys(kind).stream().map(Long::valueOf).collect(Collectors.toSet());
+    }
+
+    /**
+     * Il testo del messaggio, al massimo {@code maxBytes} byte in UTF-8.
+     */
+    String encode(String node, int maxBytes) {
+        Map<Kind, Set<String>> lines = new EnumMap<>(keys);
+        String payload = format(node, lines);
+        while (payload.getBytes(StandardCharsets.UTF_8).length > maxBytes) {
+            // Il tipo con più chiavi diventa "tutte" finché il messaggio non ci sta
+            Kind largest = lines.entrySet().stream()
+                    .filter(entry -> !entry.getValue().contains(ALL))
+                    .max(Comparator.comparingInt(entry -> entry.getValue().size()))
+                    .map(Map.Entry::getKey)
+                    .orElseThrow(() -> new IllegalStateException("Limite di " + maxBytes + " byte troppo basso"));
+            lines.put(largest, Set.of(ALL));
+            payload = format(node, lines);
+        }
+        return payload;
+    }
+
+    private static String format(String node, Map<Kind, Set<String>> lines) {
+        StringBuilder payload = new StringBuilder(node);
+        lines.forEach((kind, kindKeys) -> payload.append('\n').append(kind.code).append(' ')
+                .append(String.join(" ", kindKeys)));
+        return payload.toString();
+    }
+
+    /**
+     * @return il messaggio, o {@code null} se il testo non è un messaggio valido
+     */
+    static Message decode(String payload) {
+        String[] lines = payload.split("\n");
+        if (lines[0].isBlank()) {
+            return null;
+        }
+        Invalidation invalidation = new Invalidation();
+        for (int i = 1; i < lines.length; i++) {
+            String[] tokens = lines[i].split(" ");
+            Kind kind = tokens[0].length() == 1 ? Kind.of(tokens[0].charAt(0)) : null;
+            if (kind == null) {
+                // Tipo sconosciuto, forse da un nodo più recente: meglio invalidare tutto che ignorarlo
+                return new Message(lines[0], everything());
+            }
+            for (int t = 1; t < tokens.length; t++) {
+                if (tokens[t].equals(ALL)) {
+                    invalidation.addAll(kind);
+                } else if (!tokens[t].isEmpty()) {
+                    invalidation.add(kind, tokens[t]);
+                }
+            }
+        }
+        return new Message(lines[0], invalidation);
+    }
+
+    @Override
+    public String toString() {
+        return keys.toString();
+    }
+}
@@ -0,0 +1,367 @@
+package com.soa.service;
+
+import com.soa.model.Producer;
+import com.soa.model.Watch;
+import com.soa.model.WatchDetail;
+import com.soa.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invalidazione delle cache tra i nodi attraverso {@code LISTEN}/{@code NOTIFY} di PostgreSQL, senza un broker.
+ * <p>
+ * Ogni insert, update e delete di un'entità in cache di secondo livello ({@link Watch}, {@link WatchDetail},
+ * {@link Producer}) passato da Hibernate viene raccolto per transazione e spedito con un solo {@code pg_notify} prima
+ * del commit, sulla connessione della transazione: PostgreSQL lo consegna solo se il commit riesce. Le scritture che
+ * non passano dalle entità chiamano {@link #publish}, come {@link UserService} per le credenziali.
+ * <p>
+ * Ogni nodo ascolta il canale su una connessione dedicata, fuori dal pool, e ignora i propri messaggi. I messaggi che
+ * arrivano entro {@code watchers.invalidation.coalesce-millis} dal primo vengono fusi e applicati insieme: cache di
+ * secondo livello, query in cache, credenziali, e un {@link RemoteInvalidationEvent} per le cache dei servizi. Se la
+ * connessione cade i messaggi nel frattempo sono persi: alla riconnessione il nodo invalida tutto.
+ * <p>
+ * Attivo solo su PostgreSQL; sugli altri database (H2 di benchmark e test di carico) non fa niente.
+ */
+@Slf4j
+@Lazy(false)
+@Component
+public class InvalidationBus implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    // Il limite di PostgreSQL è 8000 byte: un po' di margine per l'id del nodo e le righe
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+    private static final String NOTIFY = "select pg_notify(?, ?)";
+    private static final long HEARTBEAT_MILLIS = 15_000;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private static final Map<Class<?>, Invalidation.Kind> CACHED_ENTITIES = Map.of(
+            Watch.class, Invalidation.Kind.WATCH,
+            WatchDetail.class, Invalidation.Kind.WATCH_DETAIL,
+            Producer.class, Invalidation.Kind.PRODUCER);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final DataSourceProperties dataSourceProperties;
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheManager cacheManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final String channel;
+    private final long coalesceMillis;
+    private final boolean enabled;
+    private final String node = UUID.randomUUID().toString().substring(0, 8);
+    private final Map<SharedSessionContractImplementor, Pending> pending = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+    private volatile Connection listenerConnection;
+    private Thread listener;
+
+    public InvalidationBus(EntityManagerFactory entityManagerFactory, DataSourceProperties dataSourceProperties,
+                           JdbcTemplate jdbcTemplate, CacheManager cacheManager,
+                           ApplicationEventPublisher eventPublisher,
+                           @Value("${watchers.invalidation.enabled:true}") boolean enabled,
+                           @Value("${watchers.invalidation.channel:watchers_invalidation}") String channel,
+                           @Value("${watchers.invalidation.coalesce-millis:100}") long coalesceMillis) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.dataSourceProperties = dataSourceProperties;
+        this.jdbcTemplate = jdbcTemplate;
+        this.cacheManager = cacheManager;
+        this.eventPublisher = eventPublisher;
+        this.channel = channel;
+        this.coalesceMillis = coalesceMillis;
+        String url = dataSourceProperties.determineUrl();
+        this.enabled = enabled && url != null && url.startsWith("jdbc:postgresql:");
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            // Finisce in un LISTEN, dove non si può usare un parametro
+            throw new IllegalArgumentException("Nome di canale non valido: " + channel);
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            log.info("Invalidazione tra nodi disattivata: serve PostgreSQL");
+            return;
+        }
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+
+        running = true;
+        listener = new Thread(this::listen, "invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+        log.info("Invalidazione tra nodi sul canale {}, nodo {}", channel, node);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (listener == null) {
+            return;
+        }
+        running = false;
+        closeQuietly(listenerConnection);
+        listener.interrupt();
+        listener.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Manda subito {@code invalidation} agli altri nodi, o al commit se c'è una transazione in corso. Per le scritture
+     * che non passano dalle entità in cache: quelle sono già raccolte da sole.
+     * <p>
+     * Un errore non viene propagato: la scrittura è già fatta, e sugli altri nodi le voci scadono con il loro TTL.
+     */
+    public void publish(Invalidation invalidation) {
+        if (!enabled || invalidation.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.query(NOTIFY, resultSet -> null, channel, invalidation.encode(node, MAX_PAYLOAD_BYTES));
+        } catch (DataAccessException e) {
+            log.warn("Invalidazione non inviata agli altri nodi: {}", invalidation, e);
+        }
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        collect(event.getSession(), event.getEntity(), event.getId());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        collect(event.getSession(), event.getEntity(), event.getId());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        collect(event.getSession(), event.getEntity(), event.getId());
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    private void collect(EventSource session, Object entity, Object id) {
+        Invalidation.Kind kind = CACHED_ENTITIES.get(entity.getClass());
+        if (kind == null) {
+            return;
+        }
+        Invalidation invalidation = pending.computeIfAbsent(session, key -> {
+            Pending created = new Pending();
+            session.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) created);
+            session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) created);
+            return created;
+        }).invalidation;
+        invalidation.add(kind, id);
+        if (entity instanceof Watch watch && watch.getUser() != null) {
+            // L'id si legge anche dal proxy LAZY senza inizializzarlo
+            invalidation.add(Invalidation.Kind.COLLECTION, watch.getUser().getId());
+        }
+    }
+
+    private void listen() {
+        boolean reconnect = false;
+        long backoff = 1000;
+        while (running) {
+            try (Connection connection = openListenerConnection()) {
+                listenerConnection = connection;
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                if (reconnect) {
+                    // Quello che è cambiato mentre la connessione era giù non arriverà più
+                    log.info("Canale {} di nuovo in ascolto: invalido tutte le cache", channel);
+                    apply(Invalidation.everything());
+                }
+                reconnect = true;
+                backoff = 1000;
+                receive(connection);
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Ascolto del canale {} interrotto, nuovo tentativo tra {} ms: {}", channel, backoff,
+                        e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            } finally {
+                listenerConnection = null;
+            }
+        }
+    }
+
+    private void receive(Connection connection) throws SQLException {
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        Invalidation received = null;
+        long flushAt = 0;
+        long lastActivity = System.nanoTime();
+        while (running) {
+            long wait = received == null
+                    ? HEARTBEAT_MILLIS
+                    : Math.max(1, TimeUnit.NANOSECONDS.toMillis(flushAt - System.nanoTime()));
+            PGNotification[] notifications = pgConnection.getNotifications((int) wait);
+            if (notifications != null && notifications.length > 0) {
+                lastActivity = System.nanoTime();
+                for (PGNotification notification : notifications) {
+                    Invalidation.Message message = Invalidation.decode(notification.getParameter());
+                    if (message == null || message.node().equals(node)) {
+                        continue;
+                    }
+                    if (received == null) {
+                        // La finestra parte dal primo messaggio: una raffica diventa una sola invalidazione
+                        received = new Invalidation();
+                        flushAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(coalesceMillis);
+                    }
+                    received.merge(message.invalidation());
+                }
+            }
+            if (received != null && System.nanoTime() - flushAt >= 0) {
+                apply(received);
+                received = null;
+            } else if (received == null
+                    && System.nanoTime() - lastActivity >= TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS)) {
+                // Una connessione caduta senza chiusura si scopre solo scrivendoci
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("select 1");
+                }
+                lastActivity = System.nanoTime();
+            }
+        }
+    }
+
+    private void apply(Invalidation invalidation) {
+        log.debug("Invalidazione da altri nodi: {}", invalidation);
+        try {
+            SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+            Set<String> spaces = new HashSet<>();
+            CACHED_ENTITIES.forEach((entityClass, kind) -> {
+                if (invalidation.isAll(kind)) {
+                    sessionFactory.getCache().evictEntityData(entityClass);
+                } else {
+                    invalidation.ids(kind).forEach(id -> sessionFactory.getCache().evictEntityData(entityClass, id));
+                }
+                if (invalidation.contains(kind)
+                        || (kind == Invalidation.Kind.WATCH && invalidation.contains(Invalidation.Kind.COLLECTION))) {
+                    spaces.addAll(List.of(sessionFactory.getMappingMetamodel().getEntityDescriptor(entityClass)
+                            .getSynchronizedQuerySpaces()));
+                }
+            });
+            if (!spaces.isEmpty()) {
+                // I timestamp delle tabelle sono locali: senza questo le query in cache su quelle tabelle non vedono
+                // le scritture degli altri nodi. Le altre query in cache restano valide.
+                try (SessionImplementor session = sessionFactory.openSession()) {
+                    sessionFactory.getCache().getTimestampsCache().invalidate(spaces.toArray(String[]::new), session);
+                }
+            }
+
+            org.springframework.cache.Cache credentials = cacheManager.getCache(UserRepository.CREDENTIALS_CACHE);
+            if (credentials != null && invalidation.isAll(Invalidation.Kind.CREDENTIALS)) {
+                credentials.clear();
+            } else if (credentials != null) {
+                invalidation.keys(Invalidation.Kind.CREDENTIALS).forEach(credentials::evict);
+            }
+
+            eventPublisher.publishEvent(new RemoteInvalidationEvent(invalidation));
+        } catch (RuntimeException e) {
+            // Il thread in ascolto deve sopravvivere: le voci non invalidate scadono comunque con il loro TTL
+            log.error("Invalidazione da altri nodi non applicata: {}", invalidation, e);
+        }
+    }
+
+    private Connection openListenerConnection() throws SQLException {
+        Properties properties = new Properties();
+        if (dataSourceProperties.determineUsername() != null) {
+            properties.setProperty("user", dataSourceProperties.determineUsername());
+        }
+        if (dataSourceProperties.determinePassword() != null) {
+            properties.setProperty("password", dataSourceProperties.determinePassword());
+        }
+        properties.setProperty("ApplicationName", "watchers-invalidation");
+        properties.setProperty("tcpKeepAlive", "true");
+        Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(), properties);
+        connection.setAutoCommit(true);
+        return connection;
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // In chiusura
+            }
+        }
+    }
+
+    /**
+     * Invalidazioni raccolte da una sessione nella transazione corrente.
+     */
+    private final class Pending implements BeforeTransactionCompletionProcess, AfterTransactionCompletionProcess {
+
+        private final Invalidation invalidation = new Invalidation();
+
+        @Override
+        public void doBeforeTransactionCompletion(SessionImplementor session) {
+            String payload = invalidation.encode(node, MAX_PAYLOAD_BYTES);
+            session.doWork(connection -> {
+                try (PreparedStatement notify = connection.prepareStatement(NOTIFY)) {
+                    notify.setString(1, channel);
+                    notify.setString(2, payload);
+                    notify.execute();
+                }
+            });
+        }
+
+        @Override
+        public void doAfterTransactionCompletion(boolean success, SharedSessionContractImplementor session) {
+            // Commit o rollback: la prossima transazione della sessione riparte da zero
+            pending.remove(session);
+        }
+    }
+}
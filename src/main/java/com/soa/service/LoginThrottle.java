@@ -0,0 +1,105 @@
+package com.soa.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limite ai tentativi di login e registrazione, per email e per indirizzo del client, controllato prima di qualsiasi
+ * lettura dal database o calcolo di hash: un attacco a raffica viene respinto quasi gratis.
+ * <p>
+ * Ogni chiave è un token bucket nella forma GCRA: un solo {@link AtomicLong} con l'istante teorico del prossimo
+ * tentativo, aggiornato con compare-and-set, senza lock. Le chiavi stanno in cache Caffeine limitate in numero
+ * ({@code watchers.throttle.max-keys}) e scadono quando il bucket sarebbe comunque di nuovo pieno, quindi la memoria
+ * resta limitata anche con milioni di email o indirizzi diversi. Se la cache è piena le chiavi meno usate vengono
+ * scartate e ripartono da un bucket pieno: chi ruota le email resta comunque limitato per indirizzo.
+ */
+@Slf4j
+@Service
+public class LoginThrottle {
+
+    public static class ThrottledException extends RuntimeException {
+        private final long retryAfterSeconds;
+
+        public ThrottledException(long retryAfterSeconds) {
+            // Senza stack trace: sotto attacco se ne lanciano migliaia al secondo
+            super("Troppi tentativi, riprova tra " + retryAfterSeconds + " secondi", null, false, false);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    private final Limiter byEmail;
+    private final Limiter byAddress;
+
+    public LoginThrottle(@Value("${watchers.throttle.email.per-minute:10}") int emailPerMinute,
+                         @Value("${watchers.throttle.email.burst:5}") int emailBurst,
+                         @Value("${watchers.throttle.address.per-minute:120}") int addressPerMinute,
+                         @Value("${watchers.throttle.address.burst:30}") int addressBurst,
+                         @Value("${watchers.throttle.max-keys:100000}") long maxKeys) {
+        this.byEmail = new Limiter(emailPerMinute, emailBurst, maxKeys);
+        this.byAddress = new Limiter(addressPerMinute, addressBurst, maxKeys);
+        log.info("Limite tentativi: {}/min (burst {}) per email, {}/min (burst {}) per indirizzo",
+                emailPerMinute, emailBurst, addressPerMinute, addressBurst);
+    }
+
+    /**
+     * Registra un tentativo per l'email e per l'indirizzo (se noto).
+     *
+     * @throws ThrottledException se uno dei due ha esaurito i tentativi
+     */
+    public void check(String email, String clientAddress) {
+        // Prima l'indirizzo: chi prova tante email da un solo client si ferma lì senza consumare i bucket delle email
+        if (clientAddress != null) {
+            byAddress.acquire(clientAddress);
+        }
+        if (email != null) {
+            byEmail.acquire(email.strip().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static final class Limiter {
+
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private final Cache<String, AtomicLong> buckets;
+
+        Limiter(int perMinute, int burst, long maxKeys) {
+            this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / perMinute;
+            this.toleranceNanos = intervalNanos * (burst - 1);
+            this.buckets = Caffeine.newBuilder()
+                    .maximumSize(maxKeys)
+                    // Dopo questo tempo senza tentativi il bucket è pieno: tenerlo non cambia niente
+                    .expireAfterAccess(Duration.ofNanos(intervalNanos * burst))
+                    .build();
+        }
+
+        void acquire(String key) {
+            AtomicLong theoreticalArrival = buckets.get(key, k -> new AtomicLong(Long.MIN_VALUE));
+            while (true) {
+                // Letto a ogni giro: un istante vecchio farebbe sembrare il tentativo in anticipo
+                long now = System.nanoTime();
+                long current = theoreticalArrival.get();
+                long base = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+                long wait = base - now - toleranceNanos;
+                if (wait > 0) {
+                    long waitSeconds = TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1);
+                    throw new ThrottledException(waitSeconds);
+                }
+                if (theoreticalArrival.compareAndSet(current, base + intervalNanos)) {
+                    return;
+                }
+            }
+        }
+    }
+}
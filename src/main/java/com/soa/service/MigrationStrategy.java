@@ -0,0 +1,35 @@
+package com.soa.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Applica le migrazioni all'avvio, a meno che {@code spring.flyway.enabled} sia {@code false}.
+ * <p>
+ * Senza AOT quella proprietà toglie già Flyway dal contesto e questa strategia non viene usata. Con
+ * {@code -Dspring.aot.enabled=true} le condizioni sono state valutate alla build, quindi Flyway c'è sempre: il run di
+ * training dell'archivio CDS (profilo {@code training}, senza database) salta le migrazioni solo grazie a questo
+ * controllo, fatto a runtime.
+ */
+@Slf4j
+@Component
+public class MigrationStrategy implements FlywayMigrationStrategy {
+
+    private final boolean enabled;
+
+    public MigrationStrategy(@Value("${spring.flyway.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void migrate(Flyway flyway) {
+        if (enabled) {
+            flyway.migrate();
+        } else {
+            log.info("Migrazioni disattivate da spring.flyway.enabled");
+        }
+    }
+}
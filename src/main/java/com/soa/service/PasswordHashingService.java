@@ -0,0 +1,170 @@
+package com.soa.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hash delle password con PBKDF2-HMAC-SHA256.
+ * <p>
+ * Il calcolo è volutamente costoso, quindi non gira mai sui thread delle richieste: tutte le operazioni vanno su un
+ * pool dedicato con un numero fisso di thread ({@code watchers.hashing.threads}, di default i core disponibili) e
+ * una coda limitata. Quando la coda è piena la richiesta fallisce subito invece di accumularsi.
+ * <p>
+ * Formato salvato: {@code pbkdf2$<iterazioni>$<base64>}. Gli hash SHA-1 esadecimali delle versioni precedenti sono
+ * ancora accettati e segnalati come da aggiornare.
+ */
+@Slf4j
+@Service
+public class PasswordHashingService {
+
+    public enum Verification {
+        VALID, VALID_NEEDS_REHASH, INVALID
+    }
+
+    public static class HashingBusyException extends RuntimeException {
+        public HashingBusyException() {
+            super("Troppe richieste in corso, riprova tra poco");
+        }
+    }
+
+    private static final String PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int KEY_LENGTH = 256;
+
+    private final int iterations;
+    private final ThreadPoolExecutor executor;
+    private final SecureRandom random = new SecureRandom();
+    // Confronto per le email sconosciute: stesso costo di un hash vero, così il tempo non rivela se l'account esiste
+    private final String dummySalt;
+    private final String dummyHash;
+
+    public PasswordHashingService(@Value("${watchers.hashing.iterations:210000}") int iterations,
+                                  @Value("${watchers.hashing.threads:0}") int threads,
+                                  @Value("${watchers.hashing.queue-capacity:256}") int queueCapacity) {
+        this.iterations = iterations;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), hashingThreads(), new ThreadPoolExecutor.AbortPolicy());
+        this.dummySalt = newSalt();
+        this.dummyHash = hashNow(newSalt(), dummySalt);
+        log.info("Hashing password: {} thread, {} iterazioni PBKDF2", poolSize, iterations);
+    }
+
+    public String newSalt() {
+        byte[] saltBytes = new byte[16];
+        random.nextBytes(saltBytes);
+        return Base64.getEncoder().encodeToString(saltBytes);
+    }
+
+    public CompletableFuture<String> hash(String rawPassword, String salt) {
+        return submit(() -> hashNow(rawPassword, salt));
+    }
+
+    public CompletableFuture<Verification> verify(String rawPassword, String salt, String storedHash) {
+        return submit(() -> verifyNow(rawPassword, salt, storedHash));
+    }
+
+    /**
+     * Verifica una password per un utente che non esiste: fa lo stesso lavoro di {@link #verify} su un hash fittizio e
+     * risponde sempre {@link Verification#INVALID}.
+     */
+    public CompletableFuture<Verification> verifyUnknown(String rawPassword) {
+        return submit(() -> {
+            verifyNow(rawPassword, dummySalt, dummyHash);
+            return Verification.INVALID;
+        });
+    }
+
+    /**
+     * Versione sincrona di {@link #hash}: da usare solo su thread che non servono richieste.
+     */
+    public String hashNow(String rawPassword, String salt) {
+        return PREFIX + iterations + "$" + Base64.getEncoder().encodeToString(pbkdf2(rawPassword, salt, iterations));
+    }
+
+    /**
+     * Versione sincrona di {@link #verify}: da usare solo su thread che non servono richieste.
+     */
+    public Verification verifyNow(String rawPassword, String salt, String storedHash) {
+        if (storedHash == null || salt == null) {
+            return Verification.INVALID;
+        }
+        if (!storedHash.startsWith(PREFIX)) {
+            String legacy = DigestUtils.sha1Hex(rawPassword + salt);
+            boolean valid = MessageDigest.isEqual(legacy.getBytes(StandardCharsets.US_ASCII),
+                    storedHash.getBytes(StandardCharsets.US_ASCII));
+            return valid ? Verification.VALID_NEEDS_REHASH : Verification.INVALID;
+        }
+
+        String[] parts = storedHash.split("\\$");
+        if (parts.length != 3) {
+            return Verification.INVALID;
+        }
+        int storedIterations = Integer.parseInt(parts[1]);
+        byte[] expected = Base64.getDecoder().decode(parts[2]);
+        if (!MessageDigest.isEqual(pbkdf2(rawPassword, salt, storedIterations), expected)) {
+            return Verification.INVALID;
+        }
+        return storedIterations < iterations ? Verification.VALID_NEEDS_REHASH : Verification.VALID;
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new HashingBusyException());
+        }
+    }
+
+    /**
+     * Il pool di hashing, esposto solo per le metriche (thread attivi, coda, rifiuti).
+     */
+    public ThreadPoolExecutor executor() {
+        return executor;
+    }
+
+    private static byte[] pbkdf2(String rawPassword, String salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(rawPassword.toCharArray(), Base64.getDecoder().decode(salt), iterations,
+                KEY_LENGTH);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " non disponibile", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static ThreadFactory hashingThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "password-hashing-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
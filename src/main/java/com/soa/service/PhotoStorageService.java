@@ -0,0 +1,322 @@
+package com.soa.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Foto degli orologi su disco locale, indirizzate per contenuto.
+ * <p>
+ * Un file caricato viene scritto in streaming su un file temporaneo calcolandone lo SHA-256, poi spostato in
+ * {@code originals/ab/<hash>.<formato>}: lo stesso contenuto caricato due volte occupa un solo file, e un file salvato
+ * non cambia mai, quindi chi lo serve può usare l'hash come ETag e farlo tenere in cache per sempre. La chiave
+ * salvata sull'orologio è {@code <hash>.<formato>}.
+ * <p>
+ * Le miniature ({@code watchers.photos.thumbnail-size} pixel di lato, JPEG) vengono generate una volta sola da un
+ * pool dedicato e limitato, subito dopo il caricamento, e restano su disco accanto agli originali. Gli originali non
+ * vengono mai decodificati per servirli; per la miniatura vengono letti sottocampionati, senza caricare l'immagine
+ * intera in memoria.
+ */
+@Slf4j
+@Service
+public class PhotoStorageService {
+
+    public static class InvalidPhotoException extends IllegalArgumentException {
+        public InvalidPhotoException(String message) {
+            super(message);
+        }
+    }
+
+    // Formati leggibili da ImageIO senza plugin aggiuntivi
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "jpg", "image/jpeg",
+            "png", "image/png",
+            "gif", "image/gif");
+    private static final Pattern KEY = Pattern.compile("([0-9a-f]{64})\\.(jpg|png|gif)");
+    // Oltre questa risoluzione il file è quasi certamente costruito per esaurire la memoria in decodifica
+    private static final long MAX_PIXELS = 400_000_000L;
+
+    private final Path originals;
+    private final Path thumbnails;
+    private final Path incoming;
+    private final int thumbnailSize;
+    private final long maxBytes;
+    private final ThreadPoolExecutor executor;
+    // Miniature in generazione: una richiesta che arriva nel frattempo aspetta la stessa invece di rifarla
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    public PhotoStorageService(@Value("${watchers.photos.directory:data/photos}") Path directory,
+                               @Value("${watchers.photos.thumbnail-size:160}") int thumbnailSize,
+                               @Value("${watchers.photos.max-upload-mb:20}") long maxUploadMb,
+                               @Value("${watchers.photos.threads:2}") int threads) throws IOException {
+        this.originals = Files.createDirectories(directory.resolve("originals"));
+        this.thumbnails = Files.createDirectories(directory.resolve("thumbnails")
+                .resolve(String.valueOf(thumbnailSize)));
+        this.incoming = Files.createDirectories(directory.resolve("incoming"));
+        this.thumbnailSize = thumbnailSize;
+        this.maxBytes = maxUploadMb * 1024 * 1024;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1000), thumbnailThreads(), new ThreadPoolExecutor.AbortPolicy());
+        log.info("Foto in {}, miniature da {} px", directory.toAbsolutePath(), thumbnailSize);
+    }
+
+    /**
+     * Salva una foto e avvia la generazione della miniatura.
+     *
+     * @return la chiave della foto, da salvare sull'orologio
+     * @throws InvalidPhotoException se il file non è un'immagine supportata o supera la dimensione massima
+     */
+    public String store(InputStream in) throws IOException {
+        Path temp = Files.createTempFile(incoming, "upload-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                copyLimited(new DigestInputStream(in, digest), out);
+            }
+            String key = HexFormat.of().formatHex(digest.digest()) + "." + formatOf(temp);
+
+            Path target = originalPath(key);
+            Files.createDirectories(target.getParent());
+            try {
+                // Se il file c'è già ha lo stesso contenuto: sostituirlo non cambia niente per chi lo sta leggendo
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                if (!Files.exists(target)) {
+                    Files.move(temp, target);
+                }
+            }
+            thumbnail(key);
+            return key;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void copyLimited(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+            if (total > maxBytes) {
+                throw new InvalidPhotoException("Foto troppo grande: massimo " + maxBytes / (1024 * 1024) + " MB");
+            }
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static String formatOf(Path file) throws IOException {
+        try (ImageInputStream image = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = image == null ? null : ImageIO.getImageReaders(image);
+            if (readers != null && readers.hasNext()) {
+                String format = readers.next().getFormatName().toLowerCase(Locale.ROOT);
+                String extension = "jpeg".equals(format) ? "jpg" : format;
+                if (CONTENT_TYPES.containsKey(extension)) {
+                    return extension;
+                }
+            }
+        }
+        throw new InvalidPhotoException("Formato non supportato: sono accettate foto JPEG, PNG e GIF");
+    }
+
+    /**
+     * @return il file originale, o {@code null} se la chiave non è valida o il file non esiste
+     */
+    public Path original(String key) {
+        if (!isValidKey(key)) {
+            return null;
+        }
+        Path path = originalPath(key);
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    /**
+     * La miniatura della foto: già pronta se è stata generata, altrimenti viene accodata (una sola volta anche con
+     * più richieste contemporanee). Il future fallisce se l'originale non esiste o non è decodificabile.
+     */
+    public CompletableFuture<Path> thumbnail(String key) {
+        if (!isValidKey(key)) {
+            return CompletableFuture.failedFuture(new InvalidPhotoException("Chiave non valida: " + key));
+        }
+        Path path = thumbnailPath(key);
+        if (Files.isRegularFile(path)) {
+            return CompletableFuture.completedFuture(path);
+        }
+        CompletableFuture<Path> created = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            CompletableFuture.supplyAsync(() -> createThumbnail(key), executor).whenComplete((result, error) -> {
+                inFlight.remove(key, created);
+                if (error != null) {
+                    created.completeExceptionally(error);
+                } else {
+                    created.complete(result);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    public static String contentType(String key) {
+        Matcher matcher = KEY.matcher(key);
+        return matcher.matches() ? CONTENT_TYPES.get(matcher.group(2)) : null;
+    }
+
+    /**
+     * L'hash del contenuto, usato come ETag: non cambia finché non cambia il file.
+     */
+    public static String hashOf(String key) {
+        Matcher matcher = KEY.matcher(key);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    public static boolean isValidKey(String key) {
+        return key != null && KEY.matcher(key).matches();
+    }
+
+    private Path createThumbnail(String key) {
+        Path target = thumbnailPath(key);
+        if (Files.isRegularFile(target)) {
+            return target;
+        }
+        long start = System.nanoTime();
+        try {
+            BufferedImage scaled = scale(readSubsampled(originalPath(key)));
+            Files.createDirectories(target.getParent());
+            Path temp = Files.createTempFile(incoming, "thumbnail-", ".tmp");
+            try {
+                if (!ImageIO.write(scaled, "jpg", temp.toFile())) {
+                    throw new IllegalStateException("Encoder JPEG non disponibile");
+                }
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            log.debug("Miniatura di {} in {} ms", key, (System.nanoTime() - start) / 1_000_000);
+            return target;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Miniatura non generata per " + key, e);
+        }
+    }
+
+    /**
+     * Decodifica leggendo una riga e una colonna ogni n, così da non tenere in memoria l'immagine a piena risoluzione.
+     */
+    private BufferedImage readSubsampled(Path original) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new InvalidPhotoException("Formato non supportato: " + original.getFileName());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > MAX_PIXELS) {
+                    throw new InvalidPhotoException("Immagine troppo grande: " + width + "x" + height);
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.min(width, height) / (thumbnailSize * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Ritaglio centrale quadrato, poi ridimensionamento al lato della miniatura
+    private BufferedImage scale(BufferedImage source) {
+        int side = Math.min(source.getWidth(), source.getHeight());
+        int x = (source.getWidth() - side) / 2;
+        int y = (source.getHeight() - side) / 2;
+        BufferedImage thumbnail = new BufferedImage(thumbnailSize, thumbnailSize, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, thumbnailSize, thumbnailSize, x, y, x + side, y + side, null);
+        } finally {
+            graphics.dispose();
+        }
+        return thumbnail;
+    }
+
+    private Path originalPath(String key) {
+        return originals.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private Path thumbnailPath(String key) {
+        return thumbnails.resolve(key.substring(0, 2)).resolve(hashOf(key) + ".jpg");
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
+    /**
+     * Il pool delle miniature, esposto solo per le metriche.
+     */
+    public ThreadPoolExecutor executor() {
+        return executor;
+    }
+
+    private static ThreadFactory thumbnailThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "photo-thumbnails-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
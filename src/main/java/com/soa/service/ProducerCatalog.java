@@ -0,0 +1,156 @@
+package com.soa.service;
+
+import com.soa.model.Producer;
+import com.soa.repository.ProducerRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tutti i produttori in memoria, caricati all'avvio. Sono pochi e cambiano di rado, quindi liste, import ed export
+ * li risolvono da qui invece di caricarli con ogni orologio.
+ * <p>
+ * I lookup leggono uno snapshot immutabile (id ordinati in un {@code long[]} con ricerca binaria, e una mappa per
+ * codice) senza lock e senza allocare. Un refresh costruisce lo snapshot nuovo a parte e lo sostituisce in un colpo
+ * solo: chi sta leggendo continua sul vecchio. Le istanze restituite sono condivise e non vanno modificate.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ManagedResource(objectName = "com.soa:name=producers")
+public class ProducerCatalog {
+
+    private record Snapshot(long[] ids, Producer[] producers, Map<String, Producer> byCode) {
+
+        static final Snapshot EMPTY = new Snapshot(new long[0], new Producer[0], Map.of());
+
+        static Snapshot of(List<Producer> sortedById) {
+            long[] ids = new long[sortedById.size()];
+            Producer[] producers = new Producer[sortedById.size()];
+            Map<String, Producer> byCode = new HashMap<>();
+            for (int i = 0; i < producers.length; i++) {
+                Producer producer = sortedById.get(i);
+                ids[i] = producer.getId();
+                producers[i] = producer;
+                // Il codice non è vincolato a essere unico: in caso di doppioni vale l'id più basso
+                if (producer.getCode() != null) {
+                    byCode.putIfAbsent(producer.getCode(), producer);
+                }
+            }
+            return new Snapshot(ids, producers, Map.copyOf(byCode));
+        }
+
+        Producer byId(long id) {
+            int index = Arrays.binarySearch(ids, id);
+            return index >= 0 ? producers[index] : null;
+        }
+    }
+
+    private final ProducerRepository producerRepository;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+
+    /**
+     * Un refresh alla volta, sullo stesso lock di {@link #reloadFor}: due caricamenti sovrapposti potrebbero finire
+     * nell'ordine sbagliato e installare per ultimo lo snapshot più vecchio. Le letture non aspettano.
+     */
+    @PostConstruct
+    @ManagedOperation(description = "Ricarica i produttori dal database")
+    public synchronized void refresh() {
+        snapshot.set(Snapshot.of(producerRepository.findAll(Sort.by("id"))));
+        log.info("Catalogo produttori: {} produttori", getSize());
+    }
+
+    /**
+     * Produttori scritti da un altro nodo: lo snapshot si ricostruisce da capo, sono pochi.
+     */
+    @EventListener
+    void onRemoteInvalidation(RemoteInvalidationEvent event) {
+        if (event.invalidation().contains(Invalidation.Kind.PRODUCER)) {
+            refresh();
+        }
+    }
+
+    @ManagedAttribute(description = "Produttori nel catalogo")
+    public int getSize() {
+        return snapshot.get().ids().length;
+    }
+
+    /**
+     * @return il produttore, o {@code null} se non è nel catalogo
+     */
+    public Producer findById(long id) {
+        return snapshot.get().byId(id);
+    }
+
+    /**
+     * Come {@link #findById} per un id che deve esistere, ad esempio letto da un orologio: se manca, il produttore è
+     * stato aggiunto dopo l'ultimo refresh e il catalogo viene ricaricato.
+     */
+    public Producer getById(long id) {
+        Producer producer = findById(id);
+        return producer != null ? producer : reloadFor(id);
+    }
+
+    /**
+     * @return il produttore, o {@code null} se il codice è vuoto o sconosciuto
+     */
+    public Producer findByCode(String code) {
+        return code == null ? null : snapshot.get().byCode().get(code);
+    }
+
+    /**
+     * Id dei produttori il cui nome o codice contiene {@code text}, senza distinguere maiuscole e minuscole. Scorre
+     * tutto il catalogo: i produttori sono pochi.
+     */
+    public List<Long> findIdsMatching(String text) {
+        String needle = text.toLowerCase(Locale.ROOT);
+        List<Long> ids = new ArrayList<>();
+        for (Producer producer : snapshot.get().producers()) {
+            if (contains(producer.getName(), needle) || contains(producer.getCode(), needle)) {
+                ids.add(producer.getId());
+            }
+        }
+        return ids;
+    }
+
+    private static boolean contains(String value, String lowerCaseNeedle) {
+        return value != null && value.toLowerCase(Locale.ROOT).contains(lowerCaseNeedle);
+    }
+
+    public List<Producer> findAll() {
+        return List.of(snapshot.get().producers());
+    }
+
+    public Producer save(Producer producer) {
+        Producer saved = producerRepository.save(producer);
+        refresh();
+        return saved;
+    }
+
+    private synchronized Producer reloadFor(long id) {
+        // Più thread possono mancare lo stesso id: solo il primo ricarica
+        Producer producer = findById(id);
+        if (producer == null) {
+            refresh();
+            producer = findById(id);
+        }
+        if (producer == null) {
+            throw new IllegalStateException("Produttore " + id + " inesistente");
+        }
+        return producer;
+    }
+}
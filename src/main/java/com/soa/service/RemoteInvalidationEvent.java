@@ -0,0 +1,8 @@
+package com.soa.service;
+
+/**
+ * Dati cambiati su un altro nodo, ricevuti da {@link InvalidationBus}: chi tiene cache in memoria scarta le voci
+ * interessate. Pubblicato fuori da ogni transazione, sul thread in ascolto del bus.
+ */
+public record RemoteInvalidationEvent(Invalidation invalidation) {
+}
@@ -3,41 +3,136 @@ package com.soa.service;
 import com.soa.model.Role;
 import com.soa.model.User;
 import com.soa.repository.UserRepository;
-import lombok.RequiredArgsConstructor;
-import org.apache.commons.codec.digest.DigestUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 
-import java.security.SecureRandom;
-import java.util.Base64;
-import java.util.Objects;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Registrazione e cambio password. L'hash si calcola sul pool di {@link PasswordHashingService}; la scrittura sul
+ * database passa poi su un pool a parte ({@code watchers.users.write-threads}), così un database lento non tiene
+ * occupati i thread di hashing e non fa rifiutare i login degli altri utenti. La coda di scrittura non ha limite
+ * proprio: a monte la limita già la coda di hashing.
+ */
 @Service
-@RequiredArgsConstructor
 public class UserService {
 
+    // Indice unico sull'email, da V2__hot_path_indexes
+    private static final String EMAIL_CONSTRAINT = "users_email_key";
+
     private final UserRepository userRepository;
-    private final SecureRandom random = new SecureRandom();
+    private final PasswordHashingService passwordHashingService;
+    private final LoginThrottle loginThrottle;
+    private final MeterRegistry meterRegistry;
+    private final InvalidationBus invalidationBus;
+    private final ThreadPoolExecutor writeExecutor;
+
+    public UserService(UserRepository userRepository, PasswordHashingService passwordHashingService,
+                       LoginThrottle loginThrottle, MeterRegistry meterRegistry, InvalidationBus invalidationBus,
+                       @Value("${watchers.users.write-threads:2}") int writeThreads) {
+        this.userRepository = userRepository;
+        this.passwordHashingService = passwordHashingService;
+        this.loginThrottle = loginThrottle;
+        this.meterRegistry = meterRegistry;
+        this.invalidationBus = invalidationBus;
+        this.writeExecutor = new ThreadPoolExecutor(writeThreads, writeThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), writeThreads());
+    }
 
-    public User registerUser(String email, String rawPassword) {
-        if (Objects.nonNull(userRepository.findByEmail(email))) {
-            throw new IllegalArgumentException("Email già registrata");
+    /**
+     * Il future fallisce con {@link AuthService.AuthException} se l'email è già registrata, con
+     * {@link LoginThrottle.ThrottledException} se ci sono stati troppi tentativi per l'email o per
+     * {@code clientAddress} ({@code null} se non è noto).
+     */
+    public CompletableFuture<User> registerUser(String email, String rawPassword, String clientAddress) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        CompletableFuture<User> result;
+        try {
+            loginThrottle.check(email, clientAddress);
+            result = doRegisterUser(email, rawPassword);
+        } catch (LoginThrottle.ThrottledException e) {
+            result = CompletableFuture.failedFuture(e);
         }
+        return result.whenComplete((user, error) ->
+                sample.stop(meterRegistry.timer("watchers.users.register", "outcome", AuthService.outcome(error))));
+    }
+
+    private CompletableFuture<User> doRegisterUser(String email, String rawPassword) {
+        String salt = passwordHashingService.newSalt();
+        return passwordHashingService.hash(rawPassword, salt).thenApplyAsync(hash -> {
+            User user = new User();
+            user.setEmail(email);
+            user.setPasswordSalt(salt);
+            user.setPasswordHash(hash);
+            user.setRole(Role.USER);
+
+            // Nessun controllo preventivo: un solo insert, e tra due registrazioni concorrenti vince il vincolo unico
+            User saved;
+            try {
+                saved = userRepository.saveAndFlush(user);
+            } catch (DataIntegrityViolationException e) {
+                if (!isDuplicateEmail(e)) {
+                    throw e;
+                }
+                throw new CompletionException(new AuthService.AuthException("Email già registrata"));
+            }
+            // Gli altri nodi possono avere in cache l'email come inesistente
+            invalidationBus.publish(Invalidation.of(Invalidation.Kind.CREDENTIALS, email));
+            return saved;
+        }, writeExecutor);
+    }
+
+    public CompletableFuture<Void> changePassword(String email, String rawPassword) {
+        String salt = passwordHashingService.newSalt();
+        return passwordHashingService.hash(rawPassword, salt).thenAcceptAsync(hash -> {
+            if (userRepository.updatePassword(email, salt, hash) == 0) {
+                throw new IllegalArgumentException("Utente non trovato");
+            }
+            invalidationBus.publish(Invalidation.of(Invalidation.Kind.CREDENTIALS, email));
+        }, writeExecutor);
+    }
 
-        String salt = generateSalt();
-        String hash = DigestUtils.sha1Hex(rawPassword + salt);
+    // Solo la violazione dell'indice sull'email è un'email già registrata; il resto (id, lunghezze, ...) è un errore
+    private static boolean isDuplicateEmail(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null) {
+                return violation.getConstraintName().toLowerCase(Locale.ROOT).contains(EMAIL_CONSTRAINT);
+            }
+        }
+        return e instanceof DuplicateKeyException;
+    }
 
-        User user = new User();
-        user.setEmail(email);
-        user.setPasswordSalt(salt);
-        user.setPasswordHash(hash);
-        user.setRole(Role.USER);
+    /**
+     * Il pool delle scritture, esposto solo per le metriche.
+     */
+    public ThreadPoolExecutor executor() {
+        return writeExecutor;
+    }
 
-        return userRepository.save(user);
+    private static ThreadFactory writeThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "user-writes-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
-    private String generateSalt() {
-        byte[] saltBytes = new byte[16];
-        random.nextBytes(saltBytes);
-        return Base64.getEncoder().encodeToString(saltBytes);
+    @PreDestroy
+    void shutdown() {
+        writeExecutor.shutdown();
     }
 }
@@ -0,0 +1,47 @@
+package com.soa.service;
+
+import com.soa.model.Watch;
+import com.soa.repository.WatchRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Export della collezione nello stesso formato accettato da {@link WatchImportService}. Le righe vengono scritte man
+ * mano che il driver le restituisce e subito staccate dal persistence context.
+ */
+@Service
+@RequiredArgsConstructor
+public class WatchExportService {
+
+    private final WatchRepository watchRepository;
+    private final ProducerCatalog producerCatalog;
+    private final EntityManager entityManager;
+
+    @Transactional(readOnly = true)
+    public long exportWatches(Long userId, WatchRecords.Format format, OutputStream out) throws IOException {
+        long exported = 0;
+        try (Stream<Watch> watches = watchRepository.streamByUserId(userId);
+             WatchRecords.RowWriter writer = WatchRecords.writer(format, out)) {
+            Iterator<Watch> iterator = watches.iterator();
+            while (iterator.hasNext()) {
+                Watch watch = iterator.next();
+                String producerCode = producerCatalog.getById(watch.getProducer().getId()).getCode();
+                writer.write(watch.getReferenceId(), producerCode, watch.getPurchaseDate().toString());
+                entityManager.detach(watch);
+                // La scheda non viene letta, ma il suo proxy resta nel persistence context finché non si stacca
+                if (watch.getSpecifications() != null) {
+                    entityManager.detach(watch.getSpecifications());
+                }
+                exported++;
+            }
+        }
+        return exported;
+    }
+}
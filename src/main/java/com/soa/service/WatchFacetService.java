@@ -0,0 +1,289 @@
+package com.soa.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.soa.model.CaseMaterial;
+import com.soa.model.Complication;
+import com.soa.model.Movement;
+import com.soa.model.Producer;
+import com.soa.model.Watch;
+import com.soa.repository.WatchFacetRow;
+import com.soa.repository.WatchRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Filtri a faccette sulla collezione (produttore, movimento, materiale, diametro, complicazioni).
+ * <p>
+ * Per ogni utente viene costruito una volta un {@link FacetIndex} con una bitmap compressa per valore; ogni click
+ * sui filtri ricalcola risultati e conteggi intersecando bitmap in memoria, senza query. Gli indici stanno in una
+ * cache limitata in memoria ({@code watchers.facets.max-index-mb}).
+ * <p>
+ * Una scrittura sulla collezione, anche da un altro nodo ({@link InvalidationBus}), non scarta l'indice: ne programma
+ * la ricostruzione su un thread a parte, al più una ogni {@code watchers.facets.rebuild-interval-millis} per utente,
+ * e nel frattempo le letture continuano sull'indice precedente. Finita la ricostruzione le viste aperte vengono
+ * avvisate tramite {@link CollectionUpdateBus}. Un import che scrive a blocchi ricostruisce così l'indice una volta
+ * per intervallo, non a ogni blocco né a ogni aggiornamento delle viste.
+ */
+@Slf4j
+@Service
+public class WatchFacetService {
+
+    public enum Facet {
+        PRODUCER("Produttore"),
+        MOVEMENT("Movimento"),
+        CASE_MATERIAL("Materiale cassa"),
+        CASE_SIZE("Diametro cassa"),
+        COMPLICATION("Complicazioni");
+
+        private final String label;
+
+        Facet(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Fasce di diametro della cassa, in millimetri (estremi inclusi).
+     */
+    public enum CaseSize {
+        SMALL("Fino a 37 mm", 0, 37),
+        MEDIUM("38-40 mm", 38, 40),
+        LARGE("41-43 mm", 41, 43),
+        EXTRA_LARGE("44 mm e oltre", 44, Integer.MAX_VALUE);
+
+        private final String label;
+        private final int minMm;
+        private final int maxMm;
+
+        CaseSize(String label, int minMm, int maxMm) {
+            this.label = label;
+            this.minMm = minMm;
+            this.maxMm = maxMm;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        static CaseSize of(Integer mm) {
+            if (mm == null) {
+                return null;
+            }
+            for (CaseSize size : values()) {
+                if (mm >= size.minMm && mm <= size.maxMm) {
+                    return size;
+                }
+            }
+            return null;
+        }
+    }
+
+    public record FacetCount(String value, String label, int count) {
+    }
+
+    /**
+     * Orologi che soddisfano la selezione e, per ogni faccetta, quanti ne resterebbero scegliendo ciascun valore.
+     */
+    public record FacetResult(int total, Map<Facet, List<FacetCount>> counts) {
+    }
+
+    private record CachedIndex(FacetIndex index, long builtAtNanos) {
+    }
+
+    private final WatchRepository watchRepository;
+    private final ProducerCatalog producerCatalog;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final CollectionUpdateBus collectionUpdates;
+    private final Cache<Long, CachedIndex> indexes;
+    private final long rebuildIntervalNanos;
+    private final ScheduledThreadPoolExecutor rebuilder;
+    // Utenti con una ricostruzione già programmata e non ancora iniziata
+    private final Set<Long> rebuildsPending = ConcurrentHashMap.newKeySet();
+
+    public WatchFacetService(WatchRepository watchRepository, ProducerCatalog producerCatalog,
+                             EntityManager entityManager, TransactionTemplate transactionTemplate,
+                             CollectionUpdateBus collectionUpdates,
+                             @Value("${watchers.facets.max-index-mb:256}") long maxIndexMb,
+                             @Value("${watchers.facets.rebuild-interval-millis:2000}") long rebuildIntervalMillis) {
+        this.watchRepository = watchRepository;
+        this.producerCatalog = producerCatalog;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.collectionUpdates = collectionUpdates;
+        // Peso in KB: un indice per collezioni molto grandi pesa qualche MB, la cache ne tiene quanti ne entrano
+        this.indexes = Caffeine.newBuilder()
+                .maximumWeight(maxIndexMb * 1024)
+                .weigher((Long userId, CachedIndex cached) -> (int) Math.min(Integer.MAX_VALUE,
+                        cached.index().sizeInBytes() / 1024 + 1))
+                .expireAfterAccess(Duration.ofMinutes(30))
+                .build();
+        this.rebuildIntervalNanos = TimeUnit.MILLISECONDS.toNanos(rebuildIntervalMillis);
+        this.rebuilder = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "facet-index-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param selection per ogni faccetta i valori scelti ({@link FacetCount#value()}); le faccette assenti o vuote
+     *                  non filtrano
+     */
+    public FacetResult facets(Long userId, Map<Facet, Set<String>> selection) {
+        FacetIndex index = index(userId);
+        RoaringBitmap matching = index.matching(selection, null);
+        int total = matching == null ? index.size() : matching.getCardinality();
+        Map<Facet, List<FacetCount>> counts = new EnumMap<>(Facet.class);
+        for (Facet facet : Facet.values()) {
+            // I conteggi di una faccetta ignorano la sua stessa selezione: mostrano cosa succede cambiandola
+            RoaringBitmap others = index.matching(selection, facet);
+            List<FacetCount> facetCounts = new ArrayList<>();
+            for (Map.Entry<String, RoaringBitmap> value : index.values(facet).entrySet()) {
+                facetCounts.add(new FacetCount(value.getKey(), label(facet, value.getKey()),
+                        FacetIndex.count(others, value.getValue())));
+            }
+            facetCounts.sort(displayOrder(facet));
+            counts.put(facet, List.copyOf(facetCounts));
+        }
+        return new FacetResult(total, counts);
+    }
+
+    public int count(Long userId, Map<Facet, Set<String>> selection) {
+        FacetIndex index = index(userId);
+        RoaringBitmap matching = index.matching(selection, null);
+        return matching == null ? index.size() : matching.getCardinality();
+    }
+
+    /**
+     * Una pagina degli orologi che soddisfano la selezione, nell'ordine della collezione. Le entità arrivano dalla
+     * cache di secondo livello quando ci sono.
+     */
+    @Transactional(readOnly = true)
+    public List<Watch> findPage(Long userId, Map<Facet, Set<String>> selection, int offset, int limit) {
+        FacetIndex index = index(userId);
+        long[] ids = index.watchIds(index.matching(selection, null), offset, limit);
+        if (ids.length == 0) {
+            return List.of();
+        }
+        List<Watch> watches = entityManager.unwrap(Session.class)
+                .byMultipleIds(Watch.class)
+                .multiLoad(Arrays.stream(ids).boxed().toList());
+        // Un orologio cancellato dopo la costruzione dell'indice torna come null
+        return watches.stream().filter(Objects::nonNull).toList();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onWatchesChanged(WatchesChangedEvent event) {
+        scheduleRebuild(event.userId());
+    }
+
+    @EventListener
+    void onRemoteInvalidation(RemoteInvalidationEvent event) {
+        if (event.invalidation().isAll(Invalidation.Kind.COLLECTION)) {
+            // Dopo una riconnessione non si sa cosa è cambiato: si riparte da zero al prossimo accesso
+            indexes.invalidateAll();
+        } else {
+            event.invalidation().ids(Invalidation.Kind.COLLECTION).forEach(this::scheduleRebuild);
+        }
+    }
+
+    private FacetIndex index(Long userId) {
+        // Solo il primo accesso costruisce l'indice sul thread del chiamante; gli aggiornamenti passano da rebuild
+        return indexes.get(userId, this::buildIndex).index();
+    }
+
+    private void scheduleRebuild(Long userId) {
+        CachedIndex cached = indexes.policy().getIfPresentQuietly(userId);
+        // Senza indice in cache non c'è niente da aggiornare: il prossimo accesso lo costruisce già aggiornato
+        if (cached == null || !rebuildsPending.add(userId)) {
+            return;
+        }
+        long delay = Math.max(0, cached.builtAtNanos() + rebuildIntervalNanos - System.nanoTime());
+        rebuilder.schedule(() -> rebuild(userId), delay, TimeUnit.NANOSECONDS);
+    }
+
+    private void rebuild(Long userId) {
+        // Tolto prima di leggere: una scrittura che arriva durante la ricostruzione ne programma un'altra
+        rebuildsPending.remove(userId);
+        if (indexes.policy().getIfPresentQuietly(userId) == null) {
+            return;
+        }
+        try {
+            indexes.put(userId, buildIndex(userId));
+        } catch (RuntimeException e) {
+            log.warn("Ricostruzione dell'indice faccette non riuscita per l'utente {}", userId, e);
+            indexes.invalidate(userId);
+        }
+        collectionUpdates.notifyChanged(userId);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        rebuilder.shutdownNow();
+    }
+
+    private CachedIndex buildIndex(Long userId) {
+        long start = System.nanoTime();
+        FacetIndex index = transactionTemplate.execute(status -> {
+            try (Stream<WatchFacetRow> rows = watchRepository.streamFacetRows(userId)) {
+                return FacetIndex.build(rows.iterator());
+            }
+        });
+        long end = System.nanoTime();
+        log.debug("Indice faccette per l'utente {}: {} orologi, {} KB in {} ms", userId, index.size(),
+                index.sizeInBytes() / 1024, (end - start) / 1_000_000);
+        return new CachedIndex(index, end);
+    }
+
+    private String label(Facet facet, String value) {
+        return switch (facet) {
+            case PRODUCER -> {
+                Producer producer = producerCatalog.findById(Long.parseLong(value));
+                yield producer != null ? producer.getName() : value;
+            }
+            case MOVEMENT -> Movement.valueOf(value).getLabel();
+            case CASE_MATERIAL -> CaseMaterial.valueOf(value).getLabel();
+            case CASE_SIZE -> CaseSize.valueOf(value).getLabel();
+            case COMPLICATION -> Complication.valueOf(value).getLabel();
+        };
+    }
+
+    private static Comparator<FacetCount> displayOrder(Facet facet) {
+        return switch (facet) {
+            case PRODUCER -> Comparator.comparing(FacetCount::label, String.CASE_INSENSITIVE_ORDER);
+            case MOVEMENT -> Comparator.comparing(count -> Movement.valueOf(count.value()));
+            case CASE_MATERIAL -> Comparator.comparing(count -> CaseMaterial.valueOf(count.value()));
+            case CASE_SIZE -> Comparator.comparing(count -> CaseSize.valueOf(count.value()));
+            case COMPLICATION -> Comparator.comparing(count -> Complication.valueOf(count.value()));
+        };
+    }
+}
@@ -0,0 +1,169 @@
+package com.soa.service;
+
+import com.soa.model.Producer;
+import com.soa.model.User;
+import com.soa.model.Watch;
+import com.soa.repository.WatchRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Import di una collezione da file. Il file viene letto una riga alla volta e scritto a blocchi di
+ * {@value #CHUNK_SIZE} orologi, ognuno nella propria transazione: la memoria usata non dipende dalla dimensione del
+ * file. Le righe non valide vengono scartate e riportate, senza interrompere l'import. Se il database rifiuta un
+ * blocco, il blocco viene riscritto una riga alla volta, così si perdono solo le righe rifiutate.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WatchImportService {
+
+    static final int CHUNK_SIZE = 500;
+    private static final int MAX_REPORTED_REJECTIONS = 100;
+
+    public record Progress(long processed, long imported, long rejected) {
+    }
+
+    public record Rejection(long line, String reason) {
+    }
+
+    public record ImportReport(long imported, long rejected, List<Rejection> rejections, Duration elapsed) {
+        public double rowsPerSecond() {
+            long millis = Math.max(1, elapsed.toMillis());
+            return (imported + rejected) * 1000.0 / millis;
+        }
+    }
+
+    private record PendingWatch(long line, String referenceId, Long producerId, LocalDate purchaseDate) {
+    }
+
+    private final WatchRepository watchRepository;
+    private final ProducerCatalog producerCatalog;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public ImportReport importWatches(Long userId, InputStream in, WatchRecords.Format format,
+                                      Consumer<Progress> progressListener) throws IOException {
+        long start = System.nanoTime();
+        ImportState state = new ImportState();
+
+        try (WatchRecords.RowReader reader = WatchRecords.reader(format, in)) {
+            List<PendingWatch> chunk = new ArrayList<>(CHUNK_SIZE);
+            WatchRecords.Row row;
+            while ((row = reader.next()) != null) {
+                PendingWatch pending = validate(row, state);
+                if (pending != null) {
+                    chunk.add(pending);
+                }
+                if (chunk.size() == CHUNK_SIZE) {
+                    writeChunk(userId, chunk, state);
+                    progressListener.accept(state.progress());
+                }
+            }
+            if (!chunk.isEmpty()) {
+                writeChunk(userId, chunk, state);
+            }
+        }
+        progressListener.accept(state.progress());
+
+        ImportReport report = new ImportReport(state.imported, state.rejected, state.rejections,
+                Duration.ofNanos(System.nanoTime() - start));
+        log.info("Import per l'utente {}: {} righe importate, {} scartate, {} righe/s",
+                userId, report.imported(), report.rejected(), Math.round(report.rowsPerSecond()));
+        return report;
+    }
+
+    private PendingWatch validate(WatchRecords.Row row, ImportState state) {
+        state.processed++;
+        if (row.error() != null) {
+            state.reject(row.line(), row.error());
+            return null;
+        }
+        if (row.referenceId() == null || row.referenceId().isBlank()) {
+            state.reject(row.line(), "Referenza mancante");
+            return null;
+        }
+        if (row.referenceId().length() > Watch.REFERENCE_ID_LENGTH) {
+            state.reject(row.line(), "Referenza più lunga di " + Watch.REFERENCE_ID_LENGTH + " caratteri");
+            return null;
+        }
+        Producer producer = producerCatalog.findByCode(row.producerCode());
+        if (producer == null) {
+            state.reject(row.line(), "Produttore sconosciuto: " + row.producerCode());
+            return null;
+        }
+        try {
+            return new PendingWatch(row.line(), row.referenceId(), producer.getId(),
+                    LocalDate.parse(row.purchaseDate()));
+        } catch (DateTimeParseException | NullPointerException e) {
+            state.reject(row.line(), "Data di acquisto non valida: " + row.purchaseDate());
+            return null;
+        }
+    }
+
+    private void writeChunk(Long userId, List<PendingWatch> chunk, ImportState state) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> save(userId, chunk));
+            state.imported += chunk.size();
+        } catch (RuntimeException e) {
+            log.warn("Blocco di import rifiutato per l'utente {}, riprovo una riga alla volta", userId, e);
+            for (PendingWatch pending : chunk) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> save(userId, List.of(pending)));
+                    state.imported++;
+                } catch (RuntimeException rowError) {
+                    log.warn("Riga {} dell'import scartata per l'utente {}", pending.line(), userId, rowError);
+                    state.reject(pending.line(), "Errore di scrittura");
+                }
+            }
+        }
+        chunk.clear();
+    }
+
+    private void save(Long userId, List<PendingWatch> pendingWatches) {
+        User user = entityManager.getReference(User.class, userId);
+        List<Watch> watches = new ArrayList<>(pendingWatches.size());
+        for (PendingWatch pending : pendingWatches) {
+            Watch watch = new Watch();
+            watch.setReferenceId(pending.referenceId());
+            watch.setProducer(entityManager.getReference(Producer.class, pending.producerId()));
+            watch.setUser(user);
+            watch.setPurchaseDate(pending.purchaseDate());
+            watches.add(watch);
+        }
+        watchRepository.saveAll(watches);
+        eventPublisher.publishEvent(new WatchesChangedEvent(userId));
+    }
+
+    private static final class ImportState {
+        private final List<Rejection> rejections = new ArrayList<>();
+        private long processed;
+        private long imported;
+        private long rejected;
+
+        void reject(long line, String reason) {
+            rejected++;
+            if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                rejections.add(new Rejection(line, reason));
+            }
+        }
+
+        Progress progress() {
+            return new Progress(processed, imported, rejected);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.soa.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Formato di scambio della collezione (CSV o JSON), letto e scritto una riga alla volta: né l'import né l'export
+ * tengono mai in memoria l'intero file.
+ * <p>
+ * Colonne CSV: {@code reference_id,producer_code,purchase_date}; un campo tra virgolette può contenere virgole,
+ * virgolette raddoppiate e a capo (fino a {@value #MAX_RECORD_LINES} righe per record). JSON: un array di oggetti con
+ * {@code referenceId}, {@code producerCode} e {@code purchaseDate} (ISO-8601).
+ * <p>
+ * Un record illeggibile diventa una {@link Row} con {@link Row#error()} e la lettura prosegue col successivo. Fa
+ * eccezione un errore di sintassi JSON: il parser non sa dove riprendere, quindi il resto del file viene scartato.
+ */
+public final class WatchRecords {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final String[] CSV_HEADER = {"reference_id", "producer_code", "purchase_date"};
+    static final int MAX_RECORD_LINES = CsvRecordReader.MAX_RECORD_LINES;
+
+    private WatchRecords() {
+    }
+
+    public enum Format {
+        CSV("text/csv"), JSON("application/json");
+
+        private final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        public static Format fromFileName(String fileName) {
+            return fileName != null && fileName.toLowerCase(Locale.ROOT).endsWith(".json") ? JSON : CSV;
+        }
+    }
+
+    /**
+     * Una riga del file così com'è stata letta; la validazione spetta a chi la consuma. Se {@code error} non è
+     * {@code null} la riga non si è potuta leggere e va scartata con quel motivo.
+     */
+    public record Row(long line, String referenceId, String producerCode, String purchaseDate, String error) {
+
+        Row(long line, String referenceId, String producerCode, String purchaseDate) {
+            this(line, referenceId, producerCode, purchaseDate, null);
+        }
+
+        static Row malformed(long line, String error) {
+            return new Row(line, null, null, null, error);
+        }
+    }
+
+    public interface RowReader extends Closeable {
+        /**
+         * @return la prossima riga, oppure {@code null} a fine file
+         */
+        Row next() throws IOException;
+    }
+
+    public interface RowWriter extends Closeable {
+        void write(String referenceId, String producerCode, String purchaseDate) throws IOException;
+    }
+
+    public static RowReader reader(Format format, InputStream in) throws IOException {
+        return switch (format) {
+            case CSV -> new CsvReader(in);
+            case JSON -> new JsonReader(in);
+        };
+    }
+
+    public static RowWriter writer(Format format, OutputStream out) throws IOException {
+        return switch (format) {
+            case CSV -> new CsvWriter(out);
+            case JSON -> new JsonWriter(out);
+        };
+    }
+
+    private static final class CsvReader implements RowReader {
+        private final CsvRecordReader records;
+        private final int[] columns = new int[CSV_HEADER.length];
+
+        CsvReader(InputStream in) throws IOException {
+            records = new CsvRecordReader(in);
+            CsvRecordReader.Record header = records.next();
+            if (header == null) {
+                throw new IOException("File vuoto");
+            }
+            if (header.error() != null) {
+                throw new IOException(header.error());
+            }
+            for (int i = 0; i < CSV_HEADER.length; i++) {
+                columns[i] = header.fields().indexOf(CSV_HEADER[i]);
+                if (columns[i] < 0) {
+                    throw new IOException("Colonna mancante: " + CSV_HEADER[i]);
+                }
+            }
+        }
+
+        @Override
+        public Row next() throws IOException {
+            CsvRecordReader.Record record = records.next();
+            if (record == null) {
+                return null;
+            }
+            if (record.error() != null) {
+                return Row.malformed(record.line(), record.error());
+            }
+            List<String> fields = record.fields();
+            return new Row(record.line(), field(fields, 0), field(fields, 1), field(fields, 2));
+        }
+
+        private String field(List<String> fields, int column) {
+            int index = columns[column];
+            return index < fields.size() ? fields.get(index).trim() : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            records.close();
+        }
+    }
+
+    private static final class JsonReader implements RowReader {
+        private final JsonParser parser;
+        private long index;
+        private boolean broken;
+
+        JsonReader(InputStream in) throws IOException {
+            parser = JSON.createParser(in);
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Il file JSON deve contenere un array di orologi");
+            }
+        }
+
+        @Override
+        public Row next() throws IOException {
+            if (broken) {
+                return null;
+            }
+            long element = index + 1;
+            try {
+                return readElement();
+            } catch (JsonParseException e) {
+                broken = true;
+                return Row.malformed(element, "JSON non valido alla riga " + parser.currentLocation().getLineNr()
+                        + ": il resto del file è stato ignorato");
+            }
+        }
+
+        private Row readElement() throws IOException {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.END_ARRAY) {
+                return null;
+            }
+            index++;
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                return Row.malformed(index, "Atteso un oggetto alla riga " + parser.currentLocation().getLineNr());
+            }
+            String referenceId = null;
+            String producerCode = null;
+            String purchaseDate = null;
+            String invalidField = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                if (parser.nextToken().isStructStart()) {
+                    // Oggetti e array vanno saltati per intero, altrimenti il parser perde il segno
+                    parser.skipChildren();
+                    if (name.equals("referenceId") || name.equals("producerCode") || name.equals("purchaseDate")) {
+                        invalidField = name;
+                    }
+                    continue;
+                }
+                switch (name) {
+                    case "referenceId" -> referenceId = parser.getValueAsString();
+                    case "producerCode" -> producerCode = parser.getValueAsString();
+                    case "purchaseDate" -> purchaseDate = parser.getValueAsString();
+                    default -> {
+                    }
+                }
+            }
+            if (invalidField != null) {
+                return Row.malformed(index, "Valore non valido per " + invalidField);
+            }
+            return new Row(index, referenceId, producerCode, purchaseDate);
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    private static final class CsvWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvWriter(OutputStream out) throws IOException {
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write(String.join(",", CSV_HEADER));
+            writer.write('\n');
+        }
+
+        @Override
+        public void write(String referenceId, String producerCode, String purchaseDate) throws IOException {
+            writer.write(escape(referenceId));
+            writer.write(',');
+            writer.write(escape(producerCode));
+            writer.write(',');
+            writer.write(escape(purchaseDate));
+            writer.write('\n');
+        }
+
+        private static String escape(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                    && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    private static final class JsonWriter implements RowWriter {
+        private final JsonGenerator generator;
+
+        JsonWriter(OutputStream out) throws IOException {
+            generator = JSON.createGenerator(out);
+            generator.writeStartArray();
+        }
+
+        @Override
+        public void write(String referenceId, String producerCode, String purchaseDate) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("referenceId", referenceId);
+            generator.writeStringField("producerCode", producerCode);
+            generator.writeStringField("purchaseDate", purchaseDate);
+            generator.writeEndObject();
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.writeEndArray();
+            generator.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.soa.service;
+
+import com.soa.model.Watch;
+import com.soa.repository.WatchCursor;
+import com.soa.repository.WatchRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Collezione dell'utente: pagine, dettaglio, ricerca e scritture.
+ * <p>
+ * La ricerca testuale guarda solo referenze e produttori. Le specifiche (movimento, materiale e diametro della cassa,
+ * complicazioni) restano fuori di proposito: sono valori enumerati e si filtrano con le faccette di
+ * {@link WatchFacetService}.
+ */
+@Service
+@RequiredArgsConstructor
+public class WatchService {
+
+    public static final int MIN_SEARCH_LENGTH = 2;
+    // pg_trgm indicizza gruppi di 3 caratteri: con meno, "contiene" e "simile" scorrerebbero tutta la collezione
+    private static final int MIN_TRIGRAM_LENGTH = 3;
+    // Più alta del default di pg_trgm (0.3): con referenze dallo stesso prefisso (PP-, RLX-, ...) lo 0.3 candida ogni
+    // referenza della marca e la query le ordina tutte prima del limite
+    private static final String SIMILARITY_THRESHOLD = "0.5";
+
+    private final WatchRepository watchRepository;
+    private final ProducerCatalog producerCatalog;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public int countWatches(Long userId) {
+        return Math.toIntExact(watchRepository.countByUserId(userId));
+    }
+
+    /**
+     * Restituisce fino a {@code limit} orologi che seguono {@code after} nell'ordine della collezione, oppure la
+     * prima pagina se {@code after} è {@code null}.
+     */
+    public List<Watch> findPage(Long userId, WatchCursor after, int limit) {
+        if (after == null) {
+            return watchRepository.findFirstPage(userId, Limit.of(limit));
+        }
+        return watchRepository.findPageAfter(userId, after.purchaseDate(), after.id(), Limit.of(limit));
+    }
+
+    /**
+     * Chiave della riga {@code skip} posizioni dopo {@code after} (dopo l'inizio se {@code null}), letta solo
+     * dall'indice: serve per posizionarsi in profondità senza caricare le entità.
+     *
+     * @return la chiave, o {@code null} se la collezione finisce prima
+     */
+    public WatchCursor findCursor(Long userId, WatchCursor after, int skip) {
+        Optional<WatchCursor> cursor = after == null
+                ? watchRepository.findCursorAt(userId, skip)
+                : watchRepository.findCursorAfterAt(userId, after.purchaseDate(), after.id(), skip);
+        return cursor.orElse(null);
+    }
+
+    /**
+     * Ricerca per referenza o per nome/codice del produttore, a livelli: referenze che iniziano col testo, poi che lo
+     * contengono, poi orologi dei produttori corrispondenti. Ogni livello è una query che si ferma al limite e parte
+     * solo se i precedenti non lo hanno raggiunto. Le referenze simili (errori di battitura) si cercano solo se non c'è
+     * nessun risultato esatto. Sotto i 3 caratteri restano solo inizio della referenza e produttori; i testi più corti
+     * di {@value #MIN_SEARCH_LENGTH} caratteri restituiscono una lista vuota.
+     */
+    @Transactional(readOnly = true)
+    public List<Watch> search(Long userId, String text, int limit) {
+        String term = text == null ? "" : text.strip();
+        if (term.length() < MIN_SEARCH_LENGTH) {
+            return List.of();
+        }
+        Map<Long, Watch> results = new LinkedHashMap<>();
+        String prefix = escapeLike(term.toLowerCase(Locale.ROOT)) + "%";
+        addUpTo(results, watchRepository.searchByReferencePrefix(userId, prefix, limit), limit);
+
+        boolean trigrams = term.length() >= MIN_TRIGRAM_LENGTH;
+        if (trigrams && results.size() < limit) {
+            String contains = "%" + escapeLike(term) + "%";
+            addUpTo(results, watchRepository.searchByReferenceContaining(userId, term, contains, limit), limit);
+        }
+        if (results.size() < limit) {
+            List<Long> producerIds = producerCatalog.findIdsMatching(term);
+            // "in ()" non è SQL valido
+            if (!producerIds.isEmpty()) {
+                addUpTo(results, watchRepository.searchByProducers(userId, producerIds, limit), limit);
+            }
+        }
+        if (trigrams && results.isEmpty()) {
+            watchRepository.setSimilarityThreshold(SIMILARITY_THRESHOLD);
+            addUpTo(results, watchRepository.searchSimilarReferences(userId, term, limit), limit);
+        }
+        return List.copyOf(results.values());
+    }
+
+    // Ogni livello chiede fino a limit righe: anche se alcune sono già nei livelli precedenti, le nuove bastano
+    private static void addUpTo(Map<Long, Watch> results, List<Watch> watches, int limit) {
+        for (Watch watch : watches) {
+            if (results.size() == limit) {
+                return;
+            }
+            results.putIfAbsent(watch.getId(), watch);
+        }
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    public Optional<Watch> findDetail(Long watchId) {
+        return watchRepository.findDetailById(watchId);
+    }
+
+    /**
+     * Se la foto è associata a un orologio dell'utente. La chiave è l'hash del contenuto e non è segreta: chi la
+     * conosce può vedere la foto solo se è sua.
+     */
+    public boolean ownsPhoto(Long userId, String photoKey) {
+        return watchRepository.existsByUserIdAndPhoto(userId, photoKey);
+    }
+
+    /**
+     * Associa una foto già salvata in {@link PhotoStorageService} a un orologio dell'utente.
+     */
+    @Transactional
+    public Watch setPhoto(Long userId, Long watchId, String photoKey) {
+        Watch watch = watchRepository.findById(watchId)
+                .filter(found -> found.getUser().getId().equals(userId))
+                .orElseThrow(() -> new IllegalArgumentException("Orologio " + watchId + " inesistente"));
+        watch.setPhoto(photoKey);
+        eventPublisher.publishEvent(new WatchesChangedEvent(userId));
+        return watch;
+    }
+
+    /**
+     * Salvataggio massivo: le insert partono in batch JDBC e gli id sono già allocati dalla sequence pooled.
+     */
+    @Transactional
+    public List<Watch> saveAll(List<Watch> watches) {
+        List<Watch> saved = watchRepository.saveAll(watches);
+        saved.stream()
+                .map(watch -> watch.getUser().getId())
+                .filter(Objects::nonNull)
+                .distinct()
+                .forEach(userId -> eventPublisher.publishEvent(new WatchesChangedEvent(userId)));
+        return saved;
+    }
+
+    public static WatchCursor cursorOf(Watch watch) {
+        return new WatchCursor(watch.getPurchaseDate(), watch.getId());
+    }
+}
@@ -0,0 +1,203 @@
+package com.soa.service;
+
+import com.soa.model.Producer;
+import com.soa.model.User;
+import com.soa.model.Watch;
+import com.soa.model.WatchStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mantiene {@code watch_stats} allineata a {@code watches}. Ogni insert, update e delete di un {@link Watch} passato
+ * da Hibernate aggiunge +1/-1 alla chiave (utente, produttore, anno); a fine transazione, dopo il flush e prima del
+ * commit, le differenze accumulate vengono scritte con un upsert per chiave. Un import di migliaia di orologi tocca
+ * così poche decine di righe di statistiche.
+ * <p>
+ * Le scritture che non passano dalle entità (update/delete in blocco in HQL o SQL) non vengono viste e devono
+ * aggiornare le statistiche da sé.
+ * <p>
+ * Sempre creato all'avvio, anche con l'inizializzazione lazy del profilo {@code faststart}: registrato in ritardo
+ * perderebbe le modifiche fatte prima, e tira su con sé Flyway e Hibernate, che così falliscono all'avvio e non alla
+ * prima richiesta.
+ */
+@Slf4j
+@Lazy(false)
+@Component
+@RequiredArgsConstructor
+public class WatchStatsListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private static final String POSTGRESQL_UPSERT = """
+            insert into watch_stats (user_id, producer_id, purchase_year, watch_count) values (?, ?, ?, ?)
+            on conflict (user_id, producer_id, purchase_year)
+            do update set watch_count = watch_stats.watch_count + excluded.watch_count""";
+    private static final String STANDARD_UPSERT = """
+            merge into watch_stats s
+            using (values (cast(? as bigint), cast(? as bigint), cast(? as integer), cast(? as bigint)))
+                as d (user_id, producer_id, purchase_year, delta)
+            on s.user_id = d.user_id and s.producer_id = d.producer_id and s.purchase_year = d.purchase_year
+            when matched then update set watch_count = s.watch_count + d.delta
+            when not matched then insert (user_id, producer_id, purchase_year, watch_count)
+                values (d.user_id, d.producer_id, d.purchase_year, d.delta)""";
+    private static final String DELETE_EMPTY = "delete from watch_stats where user_id = ? and watch_count <= 0";
+
+    // Chiavi in ordine fisso: due transazioni che toccano le stesse righe le bloccano nello stesso ordine
+    private static final Comparator<WatchStats.Key> KEY_ORDER = Comparator.comparing(WatchStats.Key::getUserId)
+            .thenComparing(WatchStats.Key::getProducerId)
+            .thenComparing(WatchStats.Key::getPurchaseYear);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Map<SharedSessionContractImplementor, Deltas> pending = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Watch watch) {
+            deltas(event.getSession()).add(keyOf(watch.getUser(), watch.getProducer(), watch.getPurchaseDate()), 1);
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Watch watch) {
+            deltas(event.getSession()).add(keyOf(watch.getUser(), watch.getProducer(), watch.getPurchaseDate()), -1);
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Watch watch)) {
+            return;
+        }
+        Object[] oldState = event.getOldState();
+        if (oldState == null) {
+            // Update di un'entità staccata senza stato precedente: non si sa da quale chiave togliere
+            log.warn("Statistiche non aggiornate per l'orologio {}: stato precedente sconosciuto", watch.getId());
+            return;
+        }
+        EntityPersister persister = event.getPersister();
+        WatchStats.Key before = keyOf((User) oldState[persister.getPropertyIndex("user")],
+                (Producer) oldState[persister.getPropertyIndex("producer")],
+                (LocalDate) oldState[persister.getPropertyIndex("purchaseDate")]);
+        WatchStats.Key after = keyOf(watch.getUser(), watch.getProducer(), watch.getPurchaseDate());
+        if (!before.equals(after)) {
+            Deltas deltas = deltas(event.getSession());
+            deltas.add(before, -1);
+            deltas.add(after, 1);
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    private static WatchStats.Key keyOf(User user, Producer producer, LocalDate purchaseDate) {
+        // Gli id si leggono anche dai proxy LAZY senza inizializzarli
+        return new WatchStats.Key(user.getId(), producer.getId(), purchaseDate.getYear());
+    }
+
+    private Deltas deltas(EventSource session) {
+        return pending.computeIfAbsent(session, key -> {
+            Deltas deltas = new Deltas();
+            session.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) deltas);
+            session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) deltas);
+            return deltas;
+        });
+    }
+
+    /**
+     * Differenze accumulate da una sessione nella transazione corrente.
+     */
+    private final class Deltas implements BeforeTransactionCompletionProcess, AfterTransactionCompletionProcess {
+
+        private final Map<WatchStats.Key, Long> counts = new HashMap<>();
+
+        void add(WatchStats.Key key, long delta) {
+            counts.merge(key, delta, Long::sum);
+        }
+
+        @Override
+        public void doBeforeTransactionCompletion(SessionImplementor session) {
+            List<Map.Entry<WatchStats.Key, Long>> changes = counts.entrySet().stream()
+                    .filter(entry -> entry.getValue() != 0)
+                    .sorted(Map.Entry.comparingByKey(KEY_ORDER))
+                    .toList();
+            if (changes.isEmpty()) {
+                return;
+            }
+            boolean postgres = session.getJdbcServices().getDialect() instanceof PostgreSQLDialect;
+            session.doWork(connection -> {
+                try (PreparedStatement upsert = connection.prepareStatement(
+                        postgres ? POSTGRESQL_UPSERT : STANDARD_UPSERT)) {
+                    for (Map.Entry<WatchStats.Key, Long> change : changes) {
+                        upsert.setLong(1, change.getKey().getUserId());
+                        upsert.setLong(2, change.getKey().getProducerId());
+                        upsert.setInt(3, change.getKey().getPurchaseYear());
+                        upsert.setLong(4, change.getValue());
+                        upsert.addBatch();
+                    }
+                    upsert.executeBatch();
+                }
+
+                Set<Long> shrunk = new TreeSet<>();
+                changes.stream()
+                        .filter(change -> change.getValue() < 0)
+                        .forEach(change -> shrunk.add(change.getKey().getUserId()));
+                if (!shrunk.isEmpty()) {
+                    try (PreparedStatement delete = connection.prepareStatement(DELETE_EMPTY)) {
+                        for (Long userId : shrunk) {
+                            delete.setLong(1, userId);
+                            delete.addBatch();
+                        }
+                        delete.executeBatch();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void doAfterTransactionCompletion(boolean success, SharedSessionContractImplementor session) {
+            // Commit o rollback: la prossima transazione della sessione riparte da zero
+            pending.remove(session);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.soa.service;
+
+import com.soa.model.Producer;
+import com.soa.model.WatchStats;
+import com.soa.repository.WatchStatsRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Statistiche della collezione per la dashboard, lette dalla tabella riassuntiva {@code watch_stats} invece che da
+ * {@code watches}: il costo dipende dal numero di produttori e anni distinti, non dal numero di orologi.
+ */
+@Service
+@RequiredArgsConstructor
+public class WatchStatsService {
+
+    public record ProducerCount(Long producerId, String producerName, long count) {
+    }
+
+    public record YearCount(int year, long count) {
+    }
+
+    public record CollectionStats(long total, List<ProducerCount> byProducer, List<YearCount> byYear) {
+    }
+
+    private final WatchStatsRepository watchStatsRepository;
+    private final ProducerCatalog producerCatalog;
+
+    /**
+     * Produttori dal più rappresentato, anni dal più recente.
+     */
+    public CollectionStats statsFor(Long userId) {
+        long total = 0;
+        Map<Long, Long> byProducer = new HashMap<>();
+        Map<Integer, Long> byYear = new TreeMap<>(Comparator.reverseOrder());
+        for (WatchStats stats : watchStatsRepository.findByUserId(userId)) {
+            total += stats.getWatchCount();
+            byProducer.merge(stats.getProducerId(), stats.getWatchCount(), Long::sum);
+            byYear.merge(stats.getPurchaseYear(), stats.getWatchCount(), Long::sum);
+        }
+
+        List<ProducerCount> producers = byProducer.entrySet().stream()
+                .map(entry -> {
+                    Producer producer = producerCatalog.getById(entry.getKey());
+                    return new ProducerCount(entry.getKey(), producer.getName(), entry.getValue());
+                })
+                .sorted(Comparator.comparingLong(ProducerCount::count).reversed()
+                        .thenComparing(ProducerCount::producerName, Comparator.nullsLast(String::compareTo)))
+                .toList();
+        List<YearCount> years = byYear.entrySet().stream()
+                .map(entry -> new YearCount(entry.getKey(), entry.getValue()))
+                .toList();
+        return new CollectionStats(total, producers, years);
+    }
+}
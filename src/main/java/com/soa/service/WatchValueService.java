@@ -0,0 +1,468 @@
+package com.soa.service;
+
+import com.soa.model.CollectionValue;
+import com.soa.model.ValueResolution;
+import com.soa.repository.CollectionValueRepository;
+import com.soa.repository.ValueChange;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Storico del valore stimato degli orologi e della collezione.
+ * <p>
+ * Ogni quotazione (orologio, giorno, valore) finisce nel log append-only {@code watch_values}, scritto con insert in
+ * batch a blocchi di {@value #CHUNK_SIZE}, ognuno nella propria transazione. Nella stessa transazione vengono
+ * aggiornate le serie riassuntive per giorno, mese e anno: l'ultima quotazione di ogni orologio per periodo e di quanto
+ * cambia in quel periodo il valore della collezione. Un orologio vale la sua ultima quotazione fino alla successiva
+ * (zero prima della prima), quindi una quotazione sposta il valore della collezione dal suo periodo fino alla
+ * quotazione successiva dello stesso orologio: al più due righe di variazione per granularità, qualunque sia la
+ * lunghezza dello storico. Le quotazioni possono arrivare in qualsiasi ordine; a parità di giorno vale l'ultima
+ * ricevuta.
+ * <p>
+ * Le letture ({@link #history}) usano solo le serie riassuntive, alla granularità più fine che resta entro
+ * {@value #MAX_POINTS} punti.
+ */
+@Slf4j
+@Service
+public class WatchValueService {
+
+    static final int CHUNK_SIZE = 5000;
+    static final int MAX_POINTS = 400;
+    private static final int SERIES_PER_QUERY = 1000;
+    private static final int MAX_REPORTED_REJECTIONS = 100;
+    private static final String CSV_HEADER = "reference_id";
+    private static final Long AMBIGUOUS = -1L;
+
+    private static final String LOCK_WATCHES = """
+            select id, purchase_date from watches where user_id = :userId and id in (:ids) order by id for update""";
+    private static final String FIND_REFERENCES = """
+            select reference_id, id, purchase_date from watches where user_id = ?""";
+    private static final String INSERT_QUOTE = """
+            insert into watch_values (watch_id, value_cents, valued_on) values (?, ?, ?)""";
+    // Per ogni serie (orologio e granularità) l'ultimo periodo salvato prima di quelli toccati e il primo dopo
+    private static final String FIND_BOUNDS = """
+            select s.watch_id, s.resolution,
+                   coalesce((select max(r.bucket) from watch_value_rollups r
+                             where r.watch_id = s.watch_id and r.resolution = s.resolution
+                               and r.bucket < s.first_bucket), s.first_bucket) as lower_bucket,
+                   coalesce((select min(r.bucket) from watch_value_rollups r
+                             where r.watch_id = s.watch_id and r.resolution = s.resolution
+                               and r.bucket > s.last_bucket), s.last_bucket) as upper_bucket
+            from (values %s) as s (watch_id, resolution, first_bucket, last_bucket)""";
+    // PostgreSQL non sa stimare quante righe cadono tra i due estremi e sceglie una hash join su tutta la tabella:
+    // "offset 0" impedisce di appiattire la subquery, così resta una ricerca sull'indice per serie
+    private static final String POSTGRESQL_FIND_CLOSES = """
+            select s.watch_id, s.resolution, r.bucket, r.close_on, r.close_cents
+            from (values %s) as s (watch_id, resolution, lower_bucket, upper_bucket)
+            cross join lateral (
+                select r.bucket, r.close_on, r.close_cents from watch_value_rollups r
+                where r.watch_id = s.watch_id and r.resolution = s.resolution
+                    and r.bucket between s.lower_bucket and s.upper_bucket
+                offset 0) r""";
+    private static final String STANDARD_FIND_CLOSES = """
+            select s.watch_id, s.resolution, r.bucket, r.close_on, r.close_cents
+            from (values %s) as s (watch_id, resolution, lower_bucket, upper_bucket)
+            join watch_value_rollups r on r.watch_id = s.watch_id and r.resolution = s.resolution
+                and r.bucket between s.lower_bucket and s.upper_bucket""";
+    private static final String SERIES_ROW =
+            "(cast(? as bigint), cast(? as smallint), cast(? as date), cast(? as date))";
+    private static final String POSTGRESQL_UPSERT_CLOSE = """
+            insert into watch_value_rollups (watch_id, resolution, bucket, close_on, close_cents) values (?, ?, ?, ?, ?)
+            on conflict (watch_id, resolution, bucket)
+            do update set close_on = excluded.close_on, close_cents = excluded.close_cents""";
+    private static final String STANDARD_UPSERT_CLOSE = """
+            merge into watch_value_rollups r
+            using (values (cast(? as bigint), cast(? as smallint), cast(? as date), cast(? as date), cast(? as bigint)))
+                as c (watch_id, resolution, bucket, close_on, close_cents)
+            on r.watch_id = c.watch_id and r.resolution = c.resolution and r.bucket = c.bucket
+            when matched then update set close_on = c.close_on, close_cents = c.close_cents
+            when not matched then insert (watch_id, resolution, bucket, close_on, close_cents)
+                values (c.watch_id, c.resolution, c.bucket, c.close_on, c.close_cents)""";
+    private static final String POSTGRESQL_UPSERT_DELTA = """
+            insert into collection_value_rollups (user_id, resolution, bucket, delta_cents) values (?, ?, ?, ?)
+            on conflict (user_id, resolution, bucket)
+            do update set delta_cents = collection_value_rollups.delta_cents + excluded.delta_cents""";
+    private static final String STANDARD_UPSERT_DELTA = """
+            merge into collection_value_rollups v
+            using (values (cast(? as bigint), cast(? as smallint), cast(? as date), cast(? as bigint)))
+                as d (user_id, resolution, bucket, delta)
+            on v.user_id = d.user_id and v.resolution = d.resolution and v.bucket = d.bucket
+            when matched then update set delta_cents = v.delta_cents + d.delta
+            when not matched then insert (user_id, resolution, bucket, delta_cents)
+                values (d.user_id, d.resolution, d.bucket, d.delta)""";
+
+    // Chiavi in ordine fisso: due transazioni che toccano le stesse righe le bloccano nello stesso ordine
+    private static final Comparator<CollectionValue.Key> KEY_ORDER = Comparator
+            .comparing(CollectionValue.Key::getUserId)
+            .thenComparing(CollectionValue.Key::getResolution)
+            .thenComparing(CollectionValue.Key::getBucket);
+
+    /**
+     * Valore di un orologio in un giorno; al centesimo, arrotondato se ha più decimali.
+     */
+    public record Quote(Long watchId, LocalDate valuedOn, BigDecimal value) {
+    }
+
+    /**
+     * Valore della collezione alla fine del periodo che inizia in {@code bucket}.
+     */
+    public record ValuePoint(LocalDate bucket, BigDecimal value) {
+    }
+
+    /**
+     * Un punto per periodo, senza buchi: i periodi senza quotazioni ripetono il valore precedente.
+     */
+    public record ValueHistory(ValueResolution resolution, List<ValuePoint> points) {
+    }
+
+    private record WatchRef(Long id, LocalDate purchaseDate) {
+    }
+
+    private record Point(Long watchId, LocalDate valuedOn, long cents) {
+    }
+
+    private record Close(LocalDate on, long cents) {
+    }
+
+    private record Series(Long watchId, ValueResolution resolution) {
+    }
+
+    private record ClosingRow(Series series, LocalDate bucket, Close close) {
+    }
+
+    private final CollectionValueRepository collectionValueRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean postgres;
+
+    public WatchValueService(CollectionValueRepository collectionValueRepository, JdbcTemplate jdbcTemplate,
+                             NamedParameterJdbcTemplate namedJdbcTemplate, TransactionTemplate transactionTemplate,
+                             EntityManagerFactory entityManagerFactory) {
+        this.collectionValueRepository = collectionValueRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.postgres = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect() instanceof PostgreSQLDialect;
+    }
+
+    /**
+     * Registra le quotazioni di orologi dell'utente. Quelle di orologi che non sono suoi, precedenti alla data di
+     * acquisto o con valore negativo vengono scartate.
+     *
+     * @return quante quotazioni sono state registrate
+     */
+    public long record(Long userId, List<Quote> quotes) {
+        long recorded = 0;
+        for (int from = 0; from < quotes.size(); from += CHUNK_SIZE) {
+            List<Quote> chunk = quotes.subList(from, Math.min(from + CHUNK_SIZE, quotes.size()));
+            recorded += transactionTemplate.execute(status -> write(userId, chunk));
+        }
+        return recorded;
+    }
+
+    /**
+     * Import di quotazioni da CSV ({@code reference_id,valued_on,value}, data ISO-8601 e valore con il punto
+     * decimale), letto un record alla volta con le regole sulle virgolette dell'import della collezione: una referenza
+     * può contenere virgole e virgolette. Le referenze che nella collezione compaiono più volte sono ambigue e le loro
+     * righe vengono scartate.
+     */
+    public WatchImportService.ImportReport importQuotes(Long userId, InputStream in) throws IOException {
+        long start = System.nanoTime();
+        Map<String, WatchRef> references = findReferences(userId);
+        List<WatchImportService.Rejection> rejections = new ArrayList<>();
+        long imported = 0;
+        long rejected = 0;
+
+        try (CsvRecordReader reader = new CsvRecordReader(in)) {
+            List<Quote> chunk = new ArrayList<>(CHUNK_SIZE);
+            CsvRecordReader.Record record;
+            while ((record = reader.next()) != null) {
+                if (record.line() == 1 && record.fields().get(0).strip().equals(CSV_HEADER)) {
+                    continue;
+                }
+                String reason = record.error() != null ? record.error() : parse(record.fields(), references, chunk);
+                if (reason != null) {
+                    rejected++;
+                    if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                        rejections.add(new WatchImportService.Rejection(record.line(), reason));
+                    }
+                }
+                if (chunk.size() == CHUNK_SIZE) {
+                    imported += record(userId, chunk);
+                    chunk.clear();
+                }
+            }
+            imported += record(userId, chunk);
+        }
+
+        WatchImportService.ImportReport report = new WatchImportService.ImportReport(imported, rejected, rejections,
+                Duration.ofNanos(System.nanoTime() - start));
+        log.info("Import quotazioni per l'utente {}: {} righe importate, {} scartate, {} righe/s",
+                userId, report.imported(), report.rejected(), Math.round(report.rowsPerSecond()));
+        return report;
+    }
+
+    /**
+     * Valore della collezione da {@code from} a {@code to}, alla granularità più fine che sta in {@value #MAX_POINTS}
+     * punti.
+     */
+    public ValueHistory history(Long userId, LocalDate from, LocalDate to) {
+        ValueResolution resolution = resolutionFor(from, to);
+        LocalDate first = resolution.bucketOf(from);
+        LocalDate last = resolution.bucketOf(to);
+        long cents = collectionValueRepository.sumBefore(userId, first.withDayOfYear(1), first.withDayOfMonth(1),
+                first);
+        Iterator<ValueChange> changes = collectionValueRepository.findChanges(userId, resolution, first, last)
+                .iterator();
+        ValueChange change = changes.hasNext() ? changes.next() : null;
+
+        List<ValuePoint> points = new ArrayList<>();
+        for (LocalDate bucket = first; !bucket.isAfter(last); bucket = resolution.next(bucket)) {
+            if (change != null && change.bucket().equals(bucket)) {
+                cents += change.deltaCents();
+                change = changes.hasNext() ? changes.next() : null;
+            }
+            points.add(new ValuePoint(bucket, BigDecimal.valueOf(cents, 2)));
+        }
+        return new ValueHistory(resolution, points);
+    }
+
+    /**
+     * Primo anno con una quotazione nella collezione, se ce n'è una.
+     */
+    public Optional<LocalDate> firstValuedYear(Long userId) {
+        return Optional.ofNullable(collectionValueRepository.findFirstYear(userId));
+    }
+
+    static ValueResolution resolutionFor(LocalDate from, LocalDate to) {
+        if (ChronoUnit.DAYS.between(from, to) < MAX_POINTS) {
+            return ValueResolution.DAY;
+        }
+        if (ChronoUnit.MONTHS.between(from.withDayOfMonth(1), to) < MAX_POINTS) {
+            return ValueResolution.MONTH;
+        }
+        return ValueResolution.YEAR;
+    }
+
+    private Map<String, WatchRef> findReferences(Long userId) {
+        Map<String, WatchRef> references = new HashMap<>();
+        jdbcTemplate.query(FIND_REFERENCES, rs -> {
+            WatchRef ref = new WatchRef(rs.getLong("id"), rs.getObject("purchase_date", LocalDate.class));
+            references.merge(rs.getString("reference_id"), ref,
+                    (first, second) -> new WatchRef(AMBIGUOUS, null));
+        }, userId);
+        return references;
+    }
+
+    /**
+     * @return il motivo per cui la riga va scartata, oppure {@code null} se è stata aggiunta a {@code chunk}
+     */
+    private static String parse(List<String> fields, Map<String, WatchRef> references, List<Quote> chunk) {
+        if (fields.size() != 3) {
+            return "Attese 3 colonne, trovate " + fields.size();
+        }
+        String referenceId = fields.get(0).strip();
+        WatchRef watch = references.get(referenceId);
+        if (watch == null) {
+            return "Referenza non presente nella collezione: " + referenceId;
+        }
+        if (AMBIGUOUS.equals(watch.id())) {
+            return "Referenza presente più volte nella collezione: " + referenceId;
+        }
+        String valuedOnText = fields.get(1).strip();
+        String valueText = fields.get(2).strip();
+        LocalDate valuedOn;
+        BigDecimal value;
+        try {
+            valuedOn = LocalDate.parse(valuedOnText);
+            value = new BigDecimal(valueText);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return "Data o valore non validi: " + valuedOnText + ", " + valueText;
+        }
+        if (valuedOn.isBefore(watch.purchaseDate())) {
+            return "Quotazione precedente all'acquisto: " + valuedOn;
+        }
+        if (value.signum() < 0) {
+            return "Valore negativo: " + value;
+        }
+        chunk.add(new Quote(watch.id(), valuedOn, value));
+        return null;
+    }
+
+    private long write(Long userId, List<Quote> quotes) {
+        // Blocca gli orologi: due scritture sullo stesso orologio leggono e aggiornano le serie una dopo l'altra
+        Map<Long, LocalDate> purchaseDates = new HashMap<>();
+        List<Long> ids = quotes.stream().map(Quote::watchId).distinct().toList();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        namedJdbcTemplate.query(LOCK_WATCHES, new MapSqlParameterSource("userId", userId).addValue("ids", ids),
+                rs -> {
+            purchaseDates.put(rs.getLong("id"), rs.getObject("purchase_date", LocalDate.class));
+        });
+
+        List<Point> points = new ArrayList<>(quotes.size());
+        for (Quote quote : quotes) {
+            LocalDate purchaseDate = purchaseDates.get(quote.watchId());
+            if (purchaseDate == null || quote.valuedOn() == null || quote.valuedOn().isBefore(purchaseDate)
+                    || quote.value() == null || quote.value().signum() < 0) {
+                continue;
+            }
+            Point point = new Point(quote.watchId(), quote.valuedOn(),
+                    quote.value().setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+            points.add(point);
+        }
+        if (points.isEmpty()) {
+            return 0;
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_QUOTE, points, points.size(), (ps, point) -> {
+            ps.setLong(1, point.watchId());
+            ps.setLong(2, point.cents());
+            ps.setDate(3, Date.valueOf(point.valuedOn()));
+        });
+
+        // Ultima quotazione per serie e periodo tra quelle arrivate; a parità di giorno vince quella arrivata dopo
+        Map<Series, TreeMap<LocalDate, Close>> incoming = new HashMap<>();
+        for (Point point : points) {
+            for (ValueResolution resolution : ValueResolution.values()) {
+                incoming.computeIfAbsent(new Series(point.watchId(), resolution), series -> new TreeMap<>())
+                        .merge(resolution.bucketOf(point.valuedOn()), new Close(point.valuedOn(), point.cents()),
+                                (current, candidate) -> candidate.on().isBefore(current.on()) ? current : candidate);
+            }
+        }
+        Map<Series, TreeMap<LocalDate, Close>> saved = findCloses(incoming);
+
+        List<ClosingRow> closes = new ArrayList<>();
+        Map<CollectionValue.Key, Long> deltas = new HashMap<>();
+        incoming.forEach((series, seriesCloses) ->
+                rollUp(userId, series, seriesCloses, saved.get(series), closes, deltas));
+        writeCloses(closes);
+        writeDeltas(deltas);
+        return points.size();
+    }
+
+    /**
+     * Applica a {@code saved} le chiusure arrivate per una serie e accumula in {@code deltas} come cambia il valore
+     * della collezione.
+     */
+    private static void rollUp(Long userId, Series series, TreeMap<LocalDate, Close> incoming,
+                               TreeMap<LocalDate, Close> saved, List<ClosingRow> closes,
+                               Map<CollectionValue.Key, Long> deltas) {
+        for (Map.Entry<LocalDate, Close> entry : incoming.entrySet()) {
+            LocalDate bucket = entry.getKey();
+            Close candidate = entry.getValue();
+            Close current = saved.get(bucket);
+            if (current != null && candidate.on().isBefore(current.on())) {
+                continue;
+            }
+            // Valore dell'orologio nel periodo prima di questa quotazione: la chiusura del periodo o quella precedente
+            Map.Entry<LocalDate, Close> previous = saved.lowerEntry(bucket);
+            long before = current != null ? current.cents() : previous != null ? previous.getValue().cents() : 0;
+            saved.put(bucket, candidate);
+            closes.add(new ClosingRow(series, bucket, candidate));
+
+            long change = candidate.cents() - before;
+            if (change != 0) {
+                deltas.merge(new CollectionValue.Key(userId, series.resolution(), bucket), change, Long::sum);
+                // Dalla quotazione successiva dell'orologio in poi il valore torna quello di prima
+                LocalDate next = saved.higherKey(bucket);
+                if (next != null) {
+                    deltas.merge(new CollectionValue.Key(userId, series.resolution(), next), -change, Long::sum);
+                }
+            }
+        }
+    }
+
+    /**
+     * Le chiusure salvate che servono a {@link #rollUp}: i periodi toccati, più quello precedente e quello successivo.
+     * Due query ogni {@value #SERIES_PER_QUERY} serie invece di una per serie.
+     */
+    private Map<Series, TreeMap<LocalDate, Close>> findCloses(Map<Series, TreeMap<LocalDate, Close>> incoming) {
+        Map<Series, TreeMap<LocalDate, Close>> saved = new HashMap<>();
+        List<Map.Entry<Series, TreeMap<LocalDate, Close>>> series = new ArrayList<>(incoming.entrySet());
+        for (int from = 0; from < series.size(); from += SERIES_PER_QUERY) {
+            List<Map.Entry<Series, TreeMap<LocalDate, Close>>> group =
+                    series.subList(from, Math.min(from + SERIES_PER_QUERY, series.size()));
+            String rows = String.join(", ", Collections.nCopies(group.size(), SERIES_ROW));
+            List<Object> ranges = new ArrayList<>(group.size() * 4);
+            for (Map.Entry<Series, TreeMap<LocalDate, Close>> entry : group) {
+                saved.put(entry.getKey(), new TreeMap<>());
+                ranges.add(entry.getKey().watchId());
+                ranges.add((short) entry.getKey().resolution().ordinal());
+                ranges.add(Date.valueOf(entry.getValue().firstKey()));
+                ranges.add(Date.valueOf(entry.getValue().lastKey()));
+            }
+
+            List<Object> bounds = new ArrayList<>(ranges.size());
+            jdbcTemplate.query(FIND_BOUNDS.formatted(rows), rs -> {
+                bounds.add(rs.getLong("watch_id"));
+                bounds.add(rs.getShort("resolution"));
+                bounds.add(rs.getDate("lower_bucket"));
+                bounds.add(rs.getDate("upper_bucket"));
+            }, ranges.toArray());
+            jdbcTemplate.query((postgres ? POSTGRESQL_FIND_CLOSES : STANDARD_FIND_CLOSES).formatted(rows), rs -> {
+                Series key = new Series(rs.getLong("watch_id"), ValueResolution.values()[rs.getShort("resolution")]);
+                saved.get(key).put(rs.getObject("bucket", LocalDate.class),
+                        new Close(rs.getObject("close_on", LocalDate.class), rs.getLong("close_cents")));
+            }, bounds.toArray());
+        }
+        return saved;
+    }
+
+    private void writeCloses(List<ClosingRow> closes) {
+        jdbcTemplate.batchUpdate(postgres ? POSTGRESQL_UPSERT_CLOSE : STANDARD_UPSERT_CLOSE, closes, closes.size(),
+                (ps, row) -> {
+                    ps.setLong(1, row.series().watchId());
+                    ps.setShort(2, (short) row.series().resolution().ordinal());
+                    ps.setDate(3, Date.valueOf(row.bucket()));
+                    ps.setDate(4, Date.valueOf(row.close().on()));
+                    ps.setLong(5, row.close().cents());
+                });
+    }
+
+    private void writeDeltas(Map<CollectionValue.Key, Long> deltas) {
+        List<Map.Entry<CollectionValue.Key, Long>> changes = deltas.entrySet().stream()
+                .filter(entry -> entry.getValue() != 0)
+                .sorted(Map.Entry.comparingByKey(KEY_ORDER))
+                .toList();
+        if (changes.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(postgres ? POSTGRESQL_UPSERT_DELTA : STANDARD_UPSERT_DELTA, changes, changes.size(),
+                (ps, change) -> {
+                    ps.setLong(1, change.getKey().getUserId());
+                    ps.setShort(2, (short) change.getKey().getResolution().ordinal());
+                    ps.setDate(3, Date.valueOf(change.getKey().getBucket()));
+                    ps.setLong(4, change.getValue());
+                });
+    }
+}
@@ -0,0 +1,8 @@
+package com.soa.service;
+
+/**
+ * La collezione di un utente è cambiata (orologi aggiunti, modificati o rimossi). Pubblicato dentro la transazione
+ * che scrive: chi tiene dati derivati dalla collezione lo ascolta dopo il commit.
+ */
+public record WatchesChangedEvent(Long userId) {
+}
@@ -0,0 +1,47 @@
+package com.soa.views;
+
+import com.soa.model.UserPrincipal;
+import com.soa.service.AuthService;
+import com.soa.views.login.LoginView;
+import com.soa.views.registration.RegistrationView;
+import com.vaadin.flow.router.BeforeEnterEvent;
+import com.vaadin.flow.router.NotFoundException;
+import com.vaadin.flow.server.ServiceInitEvent;
+import com.vaadin.flow.server.VaadinServiceInitListener;
+import com.vaadin.flow.server.VaadinSession;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Controllo d'accesso a ogni navigazione: le viste pubbliche sono sempre raggiungibili, le altre solo se il ruolo
+ * dell'utente in sessione le prevede nella tabella delle rotte di {@link AuthService}.
+ */
+@Component
+@RequiredArgsConstructor
+public class RouteAccessListener implements VaadinServiceInitListener {
+
+    private static final Set<Class<?>> PUBLIC_VIEWS = Set.of(LoginView.class, RegistrationView.class);
+
+    private final AuthService authService;
+
+    @Override
+    public void serviceInit(ServiceInitEvent event) {
+        event.getSource().addUIInitListener(uiEvent -> uiEvent.getUI().addBeforeEnterListener(this::checkAccess));
+    }
+
+    private void checkAccess(BeforeEnterEvent event) {
+        Class<?> target = event.getNavigationTarget();
+        if (PUBLIC_VIEWS.contains(target)) {
+            return;
+        }
+
+        UserPrincipal principal = VaadinSession.getCurrent().getAttribute(UserPrincipal.class);
+        if (principal == null) {
+            event.rerouteTo(LoginView.class);
+        } else if (!authService.isAuthorized(principal.role(), target)) {
+            event.rerouteToError(NotFoundException.class);
+        }
+    }
+}
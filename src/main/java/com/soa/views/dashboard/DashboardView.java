@@ -0,0 +1,90 @@
+package com.soa.views.dashboard;
+
+import com.soa.model.UserPrincipal;
+import com.soa.service.CollectionUpdateBus;
+import com.soa.service.WatchStatsService;
+import com.soa.views.home.HomeView;
+import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.grid.GridVariant;
+import com.vaadin.flow.component.html.H2;
+import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.router.PageTitle;
+import com.vaadin.flow.router.Route;
+import com.vaadin.flow.router.RouterLink;
+import com.vaadin.flow.server.VaadinSession;
+import com.vaadin.flow.shared.Registration;
+import com.vaadin.flow.theme.lumo.LumoUtility.Margin;
+
+@PageTitle("Statistiche")
+@Route("dashboard")
+public class DashboardView extends VerticalLayout {
+
+    private final UserPrincipal user;
+    private final transient WatchStatsService statsService;
+    private final transient CollectionUpdateBus collectionUpdates;
+    private final Span summary = new Span();
+    private final Grid<WatchStatsService.ProducerCount> producers = new Grid<>();
+    private final Grid<WatchStatsService.YearCount> years = new Grid<>();
+    private Registration liveUpdates;
+
+    public DashboardView(WatchStatsService statsService, CollectionUpdateBus collectionUpdates) {
+        this.statsService = statsService;
+        this.collectionUpdates = collectionUpdates;
+        // Senza utente in sessione la navigazione viene comunque rediretta alla login da RouteAccessListener
+        user = VaadinSession.getCurrent().getAttribute(UserPrincipal.class);
+        if (user == null) {
+            return;
+        }
+
+        H2 header = new H2("Statistiche della collezione");
+        header.addClassNames(Margin.Top.MEDIUM, Margin.Bottom.SMALL);
+        add(header, new RouterLink("Torna alla collezione", HomeView.class), summary);
+
+        producers.addColumn(WatchStatsService.ProducerCount::producerName).setHeader("Produttore");
+        producers.addColumn(WatchStatsService.ProducerCount::count).setHeader("Orologi");
+        producers.addThemeVariants(GridVariant.LUMO_ROW_STRIPES);
+
+        years.addColumn(WatchStatsService.YearCount::year).setHeader("Anno di acquisto");
+        years.addColumn(WatchStatsService.YearCount::count).setHeader("Orologi");
+        years.addThemeVariants(GridVariant.LUMO_ROW_STRIPES);
+
+        HorizontalLayout grids = new HorizontalLayout(producers, years);
+        grids.setSizeFull();
+        add(grids);
+        showStats();
+
+        setSizeFull();
+    }
+
+    @Override
+    protected void onAttach(AttachEvent attachEvent) {
+        super.onAttach(attachEvent);
+        if (user != null) {
+            UI ui = attachEvent.getUI();
+            liveUpdates = collectionUpdates.subscribe(user.id(), () -> ui.access(this::showStats));
+        }
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        if (liveUpdates != null) {
+            liveUpdates.remove();
+            liveUpdates = null;
+        }
+        super.onDetach(detachEvent);
+    }
+
+    private void showStats() {
+        // Una sola lettura della tabella riassuntiva, qualunque sia la dimensione della collezione
+        WatchStatsService.CollectionStats stats = statsService.statsFor(user.id());
+        summary.setText(String.format("%d orologi di %d produttori, acquistati in %d anni diversi",
+                stats.total(), stats.byProducer().size(), stats.byYear().size()));
+        producers.setItems(stats.byProducer());
+        years.setItems(stats.byYear());
+    }
+}
@@ -0,0 +1,44 @@
+package com.soa.views.home;
+
+import com.soa.model.Watch;
+import com.soa.service.WatchFacetService;
+import com.soa.service.WatchFacetService.Facet;
+import com.vaadin.flow.data.provider.AbstractBackEndDataProvider;
+import com.vaadin.flow.data.provider.Query;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * DataProvider lazy per la collezione filtrata con le faccette. L'indice delle faccette conosce già le posizioni degli
+ * orologi che soddisfano la selezione, quindi le finestre {@code (offset, limit)} della griglia si risolvono senza
+ * segnalibri: si caricano per id solo le righe visibili.
+ */
+public class FacetDataProvider extends AbstractBackEndDataProvider<Watch, Void> {
+
+    private final transient WatchFacetService facetService;
+    private final Long userId;
+    private final Map<Facet, Set<String>> selection;
+
+    public FacetDataProvider(WatchFacetService facetService, Long userId, Map<Facet, Set<String>> selection) {
+        this.facetService = facetService;
+        this.userId = userId;
+        this.selection = Map.copyOf(selection);
+    }
+
+    @Override
+    protected Stream<Watch> fetchFromBackEnd(Query<Watch, Void> query) {
+        return facetService.findPage(userId, selection, query.getOffset(), query.getLimit()).stream();
+    }
+
+    @Override
+    protected int sizeInBackEnd(Query<Watch, Void> query) {
+        return facetService.count(userId, selection);
+    }
+
+    @Override
+    public Object getId(Watch item) {
+        return item.getId();
+    }
+}
@@ -0,0 +1,91 @@
+package com.soa.views.home;
+
+import com.soa.service.WatchFacetService.Facet;
+import com.soa.service.WatchFacetService.FacetCount;
+import com.soa.service.WatchFacetService.FacetResult;
+import com.vaadin.flow.component.checkbox.CheckboxGroup;
+import com.vaadin.flow.component.checkbox.CheckboxGroupVariant;
+import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Filtri a faccette della collezione: un gruppo di caselle per faccetta, ognuna con il numero di orologi che
+ * resterebbero selezionandola. I valori che porterebbero a zero risultati restano visibili ma disabilitati.
+ */
+public class FacetFilterPanel extends VerticalLayout {
+
+    private final Map<Facet, CheckboxGroup<String>> groups = new EnumMap<>(Facet.class);
+    // valore -> conteggio corrente, per ogni faccetta; letto dai generatori di etichette
+    private final Map<Facet, Map<String, FacetCount>> counts = new EnumMap<>(Facet.class);
+    private final Map<Facet, List<String>> values = new EnumMap<>(Facet.class);
+    private final Span total = new Span();
+
+    public FacetFilterPanel(Consumer<Map<Facet, Set<String>>> selectionListener) {
+        setPadding(false);
+        setSpacing(false);
+        add(total);
+        for (Facet facet : Facet.values()) {
+            counts.put(facet, Map.of());
+            values.put(facet, List.of());
+            CheckboxGroup<String> group = new CheckboxGroup<>(facet.getLabel());
+            group.addThemeVariants(CheckboxGroupVariant.LUMO_VERTICAL);
+            group.setItemLabelGenerator(value -> {
+                FacetCount count = counts.get(facet).get(value);
+                return count == null ? value : count.label() + " (" + count.count() + ")";
+            });
+            group.setItemEnabledProvider(value -> {
+                FacetCount count = counts.get(facet).get(value);
+                return group.isSelected(value) || count != null && count.count() > 0;
+            });
+            group.addValueChangeListener(event -> {
+                // Le selezioni ripristinate da show() non sono un cambio di filtro
+                if (event.isFromClient()) {
+                    selectionListener.accept(getSelection());
+                }
+            });
+            groups.put(facet, group);
+            add(group);
+        }
+    }
+
+    public Map<Facet, Set<String>> getSelection() {
+        Map<Facet, Set<String>> selection = new EnumMap<>(Facet.class);
+        groups.forEach((facet, group) -> {
+            if (!group.getSelectedItems().isEmpty()) {
+                selection.put(facet, Set.copyOf(group.getSelectedItems()));
+            }
+        });
+        return selection;
+    }
+
+    public void show(FacetResult result) {
+        total.setText(result.total() + " orologi");
+        result.counts().forEach((facet, facetCounts) -> {
+            Map<String, FacetCount> byValue = new HashMap<>();
+            facetCounts.forEach(count -> byValue.put(count.value(), count));
+            counts.put(facet, byValue);
+
+            CheckboxGroup<String> group = groups.get(facet);
+            List<String> facetValues = facetCounts.stream().map(FacetCount::value).toList();
+            if (!facetValues.equals(values.get(facet))) {
+                Set<String> selected = new HashSet<>(group.getSelectedItems());
+                selected.retainAll(byValue.keySet());
+                values.put(facet, facetValues);
+                group.setItems(facetValues);
+                group.setValue(selected);
+            } else if (!facetValues.isEmpty()) {
+                // Stessi valori: cambiano solo conteggi e abilitazione
+                group.getListDataView().refreshAll();
+            }
+            group.setVisible(!facetValues.isEmpty());
+        });
+    }
+}
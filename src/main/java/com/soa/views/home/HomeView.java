@@ -1,34 +1,240 @@
 package com.soa.views.home;
 
+import com.soa.model.UserPrincipal;
+import com.soa.model.Watch;
+import com.soa.service.CollectionUpdateBus;
+import com.soa.service.PhotoStorageService;
+import com.soa.service.ProducerCatalog;
+import com.soa.service.WatchExportService;
+import com.soa.service.WatchFacetService;
+import com.soa.service.WatchImportService;
+import com.soa.service.WatchRecords;
+import com.soa.service.WatchService;
+import com.soa.views.dashboard.DashboardView;
+import com.soa.views.value.ValueHistoryView;
+import com.soa.web.PhotoController;
+import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.grid.GridVariant;
+import com.vaadin.flow.component.html.Anchor;
+import com.vaadin.flow.component.html.AttachmentType;
 import com.vaadin.flow.component.html.H2;
-import com.vaadin.flow.component.html.Image;
-import com.vaadin.flow.component.html.Paragraph;
+import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.component.icon.VaadinIcon;
+import com.vaadin.flow.component.notification.Notification;
+import com.vaadin.flow.component.notification.NotificationVariant;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.textfield.TextField;
+import com.vaadin.flow.component.upload.Upload;
+import com.vaadin.flow.data.provider.AbstractBackEndDataProvider;
+import com.vaadin.flow.data.renderer.LitRenderer;
+import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.router.RouterLink;
+import com.vaadin.flow.server.VaadinSession;
+import com.vaadin.flow.server.streams.DownloadHandler;
+import com.vaadin.flow.server.streams.UploadHandler;
+import com.vaadin.flow.shared.Registration;
 import com.vaadin.flow.theme.lumo.LumoUtility.Margin;
 
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
 @PageTitle("Home")
 @Route("home")
 //@Menu(order = 1, icon = LineAwesomeIconUrl.FILE)
 public class HomeView extends VerticalLayout {
 
-    public HomeView() {
-        setSpacing(false);
+    private static final int SEARCH_RESULTS = 50;
+    // Attesa dopo l'ultimo tasto prima di cercare: una query per parola digitata, non una per carattere
+    private static final int SEARCH_DEBOUNCE_MILLIS = 300;
+
+    private final UserPrincipal user;
+    private final transient WatchService watchService;
+    private final transient WatchFacetService facetService;
+    private final transient CollectionUpdateBus collectionUpdates;
+    private Registration liveUpdates;
+    private Grid<Watch> grid;
+    private WatchDataProvider dataProvider;
+    // Collezione completa o filtrata con le faccette; la ricerca la sostituisce solo finché il campo è pieno
+    private AbstractBackEndDataProvider<Watch, Void> browseProvider;
+    private FacetFilterPanel facetPanel;
+    private TextField search;
+    private Span importStatus;
+
+    public HomeView(WatchService watchService, WatchImportService importService, WatchExportService exportService,
+                    WatchFacetService facetService, ProducerCatalog producerCatalog, PhotoStorageService photoStorage,
+                    CollectionUpdateBus collectionUpdates) {
+        this.watchService = watchService;
+        this.facetService = facetService;
+        this.collectionUpdates = collectionUpdates;
+        // Senza utente in sessione la navigazione viene comunque rediretta alla login da RouteAccessListener
+        user = VaadinSession.getCurrent().getAttribute(UserPrincipal.class);
+        if (user == null) {
+            return;
+        }
 
-        Image img = new Image("images/empty-plant.png", "placeholder plant");
-        img.setWidth("200px");
-        add(img);
+        H2 header = new H2("La mia collezione");
+        header.addClassNames(Margin.Top.MEDIUM, Margin.Bottom.SMALL);
+        add(header, new HorizontalLayout(new RouterLink("Statistiche", DashboardView.class),
+                new RouterLink("Valore", ValueHistoryView.class)));
+        add(createTransferBar(importService, exportService, facetService));
+        add(createSearchField(watchService));
 
-        H2 header = new H2("This place intentionally left empty");
-        header.addClassNames(Margin.Top.XLARGE, Margin.Bottom.MEDIUM);
-        add(header);
-        add(new Paragraph("It’s a place where you can grow your own UI 🤗"));
+        // Solo la finestra visibile viene caricata: la griglia chiede le righe al DataProvider mentre si scorre
+        grid = new Grid<>(Watch.class, false);
+        // Miniature già pronte su disco e tenute in cache dal browser; il browser le chiede solo per le righe visibili
+        grid.addColumn(LitRenderer.<Watch>of(
+                        "<img src=\"${item.thumbnail}\" alt=\"\" width=\"48\" height=\"48\" loading=\"lazy\">")
+                        .withProperty("thumbnail", watch -> PhotoController.thumbnailUrl(watch.getPhoto())))
+                .setHeader("Foto")
+                .setAutoWidth(true)
+                .setFlexGrow(0);
+        grid.addColumn(Watch::getReferenceId).setHeader("Referenza");
+        grid.addColumn(watch -> producerCatalog.getById(watch.getProducer().getId()).getName())
+                .setHeader("Produttore");
+        grid.addColumn(Watch::getPurchaseDate).setHeader("Data di acquisto");
+        grid.addThemeVariants(GridVariant.LUMO_ROW_STRIPES);
+        grid.addItemClickListener(event -> new WatchPhotoDialog(event.getItem(), user.id(), photoStorage, watchService,
+                updated -> grid.getDataProvider().refreshItem(updated)).open());
+        dataProvider = new WatchDataProvider(watchService, user.id());
+        browseProvider = dataProvider;
+        grid.setItems(dataProvider);
+        grid.setSizeFull();
+
+        facetPanel = new FacetFilterPanel(selection -> applyFacets(facetService, selection));
+        facetPanel.setWidth("16em");
+        facetPanel.show(facetService.facets(user.id(), Map.of()));
+
+        HorizontalLayout content = new HorizontalLayout(facetPanel, grid);
+        content.setFlexGrow(1, grid);
+        content.setSizeFull();
+        add(content);
 
         setSizeFull();
-        setJustifyContentMode(JustifyContentMode.CENTER);
-        setDefaultHorizontalComponentAlignment(Alignment.CENTER);
-        getStyle().set("text-align", "center");
+    }
+
+    @Override
+    protected void onAttach(AttachEvent attachEvent) {
+        super.onAttach(attachEvent);
+        if (user != null) {
+            // Modifiche fatte altrove (altre schede, sessioni o nodi) arrivano in push, raggruppate dal bus
+            UI ui = attachEvent.getUI();
+            liveUpdates = collectionUpdates.subscribe(user.id(), () -> ui.access(this::refreshCollection));
+        }
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        if (liveUpdates != null) {
+            liveUpdates.remove();
+            liveUpdates = null;
+        }
+        super.onDetach(detachEvent);
+    }
+
+    /**
+     * Ricarica conteggi e righe visibili mantenendo filtri, ricerca e posizione nella griglia.
+     */
+    private void refreshCollection() {
+        facetPanel.show(facetService.facets(user.id(), facetPanel.getSelection()));
+        String text = search.getValue().strip();
+        if (text.length() < WatchService.MIN_SEARCH_LENGTH) {
+            browseProvider.refreshAll();
+        } else {
+            grid.setItems(watchService.search(user.id(), text, SEARCH_RESULTS));
+        }
+    }
+
+    private void applyFacets(WatchFacetService facetService, Map<WatchFacetService.Facet, Set<String>> selection) {
+        facetPanel.show(facetService.facets(user.id(), selection));
+        // Senza filtri resta la paginazione keyset sulla collezione completa
+        browseProvider = selection.isEmpty()
+                ? dataProvider
+                : new FacetDataProvider(facetService, user.id(), selection);
+        if (search.getValue().strip().length() < WatchService.MIN_SEARCH_LENGTH) {
+            grid.setItems(browseProvider);
+        }
+    }
+
+    private TextField createSearchField(WatchService watchService) {
+        search = new TextField();
+        search.setPlaceholder("Cerca per referenza o produttore");
+        search.setPrefixComponent(VaadinIcon.SEARCH.create());
+        search.setClearButtonVisible(true);
+        search.setWidth("24em");
+        search.setValueChangeMode(ValueChangeMode.LAZY);
+        search.setValueChangeTimeout(SEARCH_DEBOUNCE_MILLIS);
+        search.addValueChangeListener(event -> {
+            String text = event.getValue().strip();
+            if (text.length() < WatchService.MIN_SEARCH_LENGTH) {
+                // Campo vuoto: torna alla collezione, con i filtri a faccette correnti
+                grid.setItems(browseProvider);
+            } else {
+                grid.setItems(watchService.search(user.id(), text, SEARCH_RESULTS));
+            }
+        });
+        return search;
+    }
+
+    private HorizontalLayout createTransferBar(WatchImportService importService, WatchExportService exportService,
+                                               WatchFacetService facetService) {
+        Long userId = user.id();
+
+        // Il file arriva in streaming direttamente all'import, senza essere bufferizzato in memoria o su disco
+        UploadHandler importHandler = event -> {
+            UI ui = event.getUI();
+            try {
+                WatchImportService.ImportReport report = importService.importWatches(userId, event.getInputStream(),
+                        WatchRecords.Format.fromFileName(event.getFileName()),
+                        progress -> ui.access(() -> importStatus.setText(
+                                "Righe lette: " + progress.processed() + ", scartate: " + progress.rejected())));
+                ui.access(() -> showImportReport(report, facetService));
+            } catch (IOException e) {
+                ui.access(() -> Notification.show("File non leggibile: " + e.getMessage(), 5000,
+                        Notification.Position.TOP_CENTER).addThemeVariants(NotificationVariant.LUMO_ERROR));
+            }
+        };
+        Upload upload = new Upload(importHandler);
+        upload.setAcceptedFileTypes(".csv", ".json");
+        upload.setDropAllowed(false);
+        upload.setUploadButton(new Button("Importa"));
+
+        importStatus = new Span();
+
+        HorizontalLayout bar = new HorizontalLayout(upload,
+                exportLink(exportService, userId, WatchRecords.Format.CSV),
+                exportLink(exportService, userId, WatchRecords.Format.JSON),
+                importStatus);
+        bar.setAlignItems(Alignment.CENTER);
+        return bar;
+    }
+
+    private Anchor exportLink(WatchExportService exportService, Long userId, WatchRecords.Format format) {
+        DownloadHandler handler = event -> {
+            event.setFileName("collezione." + format.extension());
+            event.setContentType(format.contentType());
+            exportService.exportWatches(userId, format, event.getOutputStream());
+        };
+        return new Anchor(handler, AttachmentType.DOWNLOAD, "Esporta " + format.name());
+    }
+
+    private void showImportReport(WatchImportService.ImportReport report, WatchFacetService facetService) {
+        importStatus.setText(String.format("Importati %d orologi, scartati %d (%.0f righe/s)",
+                report.imported(), report.rejected(), report.rowsPerSecond()));
+        if (report.rejected() > 0) {
+            WatchImportService.Rejection first = report.rejections().get(0);
+            Notification.show("Riga " + first.line() + ": " + first.reason(), 5000, Notification.Position.TOP_CENTER)
+                    .addThemeVariants(NotificationVariant.LUMO_WARNING);
+        }
+        dataProvider.refreshAll();
+        applyFacets(facetService, facetPanel.getSelection());
     }
 
 }
@@ -0,0 +1,78 @@
+package com.soa.views.home;
+
+import com.soa.model.Watch;
+import com.soa.repository.WatchCursor;
+import com.soa.service.WatchService;
+import com.vaadin.flow.data.provider.AbstractBackEndDataProvider;
+import com.vaadin.flow.data.provider.Query;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * DataProvider lazy per la griglia della collezione.
+ * <p>
+ * La griglia chiede finestre {@code (offset, limit)}; qui vengono tradotte in richieste keyset ricordando, per
+ * ogni offset già raggiunto, la chiave dell'ultima riga che lo precede. Lo scorrimento sequenziale riparte sempre
+ * da un segnalibro esatto.
+ * <p>
+ * Un salto oltre i segnalibri costa due query qualunque sia la profondità: una sonda sull'indice
+ * {@code (user_id, purchase_date, id)} restituisce solo la chiave della riga che precede l'offset, partendo dal
+ * segnalibro più vicino, e da lì si legge la pagina. La sonda fa scorrere al database le voci dell'indice in mezzo
+ * (senza leggere le righe né trasferirle), quindi resta proporzionale alla distanza dal segnalibro, ma con un solo
+ * round trip e una sola chiave in risposta; la pagina stessa costa come la prima.
+ */
+public class WatchDataProvider extends AbstractBackEndDataProvider<Watch, Void> {
+
+    private final transient WatchService watchService;
+    private final Long userId;
+    // offset -> chiave della riga precedente (null per l'inizio della collezione)
+    private final TreeMap<Integer, WatchCursor> bookmarks = new TreeMap<>();
+
+    public WatchDataProvider(WatchService watchService, Long userId) {
+        this.watchService = watchService;
+        this.userId = userId;
+        bookmarks.put(0, null);
+    }
+
+    @Override
+    protected Stream<Watch> fetchFromBackEnd(Query<Watch, Void> query) {
+        int offset = query.getOffset();
+        Map.Entry<Integer, WatchCursor> start = bookmarks.floorEntry(offset);
+        int position = start.getKey();
+        WatchCursor cursor = start.getValue();
+
+        if (position < offset) {
+            // Chiave dell'ultima riga prima dell'offset: quella in posizione offset - 1
+            cursor = watchService.findCursor(userId, cursor, offset - position - 1);
+            if (cursor == null) {
+                return Stream.empty();
+            }
+            bookmarks.put(offset, cursor);
+        }
+
+        List<Watch> page = watchService.findPage(userId, cursor, query.getLimit());
+        if (!page.isEmpty()) {
+            bookmarks.put(offset + page.size(), WatchService.cursorOf(page.get(page.size() - 1)));
+        }
+        return page.stream();
+    }
+
+    @Override
+    protected int sizeInBackEnd(Query<Watch, Void> query) {
+        return watchService.countWatches(userId);
+    }
+
+    @Override
+    public Object getId(Watch item) {
+        return item.getId();
+    }
+
+    @Override
+    public void refreshAll() {
+        bookmarks.tailMap(0, false).clear();
+        super.refreshAll();
+    }
+}
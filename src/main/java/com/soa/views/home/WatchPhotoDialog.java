@@ -0,0 +1,61 @@
+package com.soa.views.home;
+
+import com.soa.model.Watch;
+import com.soa.service.PhotoStorageService;
+import com.soa.service.WatchService;
+import com.soa.web.PhotoController;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.dialog.Dialog;
+import com.vaadin.flow.component.html.Image;
+import com.vaadin.flow.component.notification.Notification;
+import com.vaadin.flow.component.notification.NotificationVariant;
+import com.vaadin.flow.component.upload.Upload;
+import com.vaadin.flow.server.streams.UploadHandler;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Foto di un orologio, a piena risoluzione, con il caricamento di una foto nuova. Il file arriva in streaming
+ * direttamente nello storage, senza essere bufferizzato in memoria.
+ */
+public class WatchPhotoDialog extends Dialog {
+
+    private final Image image = new Image();
+
+    public WatchPhotoDialog(Watch watch, Long userId, PhotoStorageService photoStorage, WatchService watchService,
+                            Consumer<Watch> photoChanged) {
+        setHeaderTitle("Foto di " + watch.getReferenceId());
+        showPhoto(watch.getPhoto());
+        image.setMaxWidth("32em");
+        image.setMaxHeight("32em");
+
+        UploadHandler handler = event -> {
+            UI ui = event.getUI();
+            try {
+                String key = photoStorage.store(event.getInputStream());
+                Watch updated = watchService.setPhoto(userId, watch.getId(), key);
+                ui.access(() -> {
+                    showPhoto(key);
+                    photoChanged.accept(updated);
+                });
+            } catch (IOException | IllegalArgumentException e) {
+                ui.access(() -> Notification.show("Foto non salvata: " + e.getMessage(), 5000,
+                        Notification.Position.TOP_CENTER).addThemeVariants(NotificationVariant.LUMO_ERROR));
+            }
+        };
+        Upload upload = new Upload(handler);
+        upload.setAcceptedFileTypes("image/jpeg", "image/png", "image/gif");
+        upload.setMaxFiles(1);
+        upload.setUploadButton(new Button("Carica foto"));
+
+        add(image, upload);
+        getFooter().add(new Button("Chiudi", event -> close()));
+    }
+
+    private void showPhoto(String key) {
+        image.setSrc(key == null ? PhotoController.thumbnailUrl(null) : PhotoController.photoUrl(key));
+        image.setAlt(key == null ? "Nessuna foto" : "Foto dell'orologio");
+    }
+}
@@ -1,6 +1,9 @@
 package com.soa.views.login;
 
+import com.soa.model.UserPrincipal;
 import com.soa.service.AuthService;
+import com.soa.service.LoginThrottle;
+import com.soa.service.PasswordHashingService;
 import com.vaadin.flow.component.Key;
 import com.vaadin.flow.component.Shortcuts;
 import com.vaadin.flow.component.UI;
@@ -20,6 +23,10 @@ import com.vaadin.flow.data.binder.ValidationException;
 import com.vaadin.flow.data.validator.EmailValidator;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.server.VaadinRequest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @PageTitle("Login")
 @Route("login")
@@ -29,6 +36,8 @@ public class LoginView extends VerticalLayout {
     private PasswordField passwordField;
     private Button loginButton;
     private Binder<LoginData> binder;
+    // Verifica in corso: ENTER arriva anche con il pulsante disabilitato
+    private boolean inFlight;
 
     public LoginView(AuthService authService) {
         createUI();
@@ -110,29 +119,54 @@ public class LoginView extends VerticalLayout {
     }
 
     private void performLogin(AuthService authService) {
+        if (inFlight) {
+            return;
+        }
         try {
             LoginData loginData = new LoginData();
             binder.writeBean(loginData);
 
-            if (authenticateUser(authService, loginData.getEmail(), loginData.getPassword())) {
-                showNotification("Login effettuato con successo!", NotificationVariant.LUMO_SUCCESS);
-                UI.getCurrent().navigate("home"); // o "dashboard"
-            } else {
-                showNotification("Email o password non validi", NotificationVariant.LUMO_ERROR);
+            // La verifica della password gira fuori dal thread della richiesta; l'esito arriva via push
+            UI ui = UI.getCurrent();
+            // Indirizzo del client per il limite ai tentativi; dietro un proxy serve server.forward-headers-strategy
+            String clientAddress = VaadinRequest.getCurrent().getRemoteAddr();
+            inFlight = true;
+            loginButton.setEnabled(false);
+            CompletableFuture<UserPrincipal> attempt;
+            try {
+                attempt = authService.authenticate(loginData.getEmail(), loginData.getPassword(), clientAddress);
+            } catch (RuntimeException e) {
+                // Anche un errore immediato passa dal completamento, che riabilita il form
+                attempt = CompletableFuture.failedFuture(e);
             }
+            attempt.whenComplete((user, error) -> ui.access(() -> {
+                        inFlight = false;
+                        loginButton.setEnabled(binder.isValid());
+                        if (error == null) {
+                            authService.login(user);
+                            showNotification("Login effettuato con successo!", NotificationVariant.LUMO_SUCCESS);
+                            ui.navigate("home"); // o "dashboard"
+                        } else {
+                            showNotification(errorMessage(error), NotificationVariant.LUMO_ERROR);
+                        }
+                    }));
 
         } catch (ValidationException e) {
             showNotification("Controlla i dati inseriti", NotificationVariant.LUMO_ERROR);
         }
     }
 
-    private boolean authenticateUser(AuthService authService, String email, String password) {
-        try {
-            authService.authenticate(email, password);
-            return true;
-        } catch (Exception e) {
-            return false;
+    private String errorMessage(Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        if (cause instanceof PasswordHashingService.HashingBusyException
+                || cause instanceof LoginThrottle.ThrottledException) {
+            return cause.getMessage();
+        }
+        if (cause instanceof AuthService.AuthException) {
+            return "Email o password non validi";
         }
+        // Database o altro errore interno: il messaggio può contenere dettagli che l'utente non deve vedere
+        return "Accesso non riuscito, riprova più tardi";
     }
 
     private void showNotification(String message, NotificationVariant variant) {
@@ -1,5 +1,9 @@
 package com.soa.views.registration;
 
+import com.soa.model.User;
+import com.soa.service.AuthService;
+import com.soa.service.LoginThrottle;
+import com.soa.service.PasswordHashingService;
 import com.soa.service.UserService;
 import com.vaadin.flow.component.Key;
 import com.vaadin.flow.component.Shortcuts;
@@ -20,6 +24,10 @@ import com.vaadin.flow.data.binder.ValidationException;
 import com.vaadin.flow.data.validator.EmailValidator;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.server.VaadinRequest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 
 @PageTitle("Registration")
@@ -32,6 +40,8 @@ public class RegistrationView extends VerticalLayout {
     private Button loginButton;
     private Binder<LoginData> binder;
     private UserService userService;
+    // Registrazione in corso: ENTER arriva anche con il pulsante disabilitato
+    private boolean inFlight;
 
     public RegistrationView(UserService userService) {
         createUI();
@@ -143,27 +153,58 @@ public class RegistrationView extends VerticalLayout {
     }
 
     private void performLogin(UserService userService) {
+        if (inFlight) {
+            return;
+        }
         try {
             LoginData loginData = new LoginData();
             binder.writeBean(loginData);
 
-            userService.registerUser(loginData.getEmail(), loginData.getPassword());
-
-            Notification.show("Registrazione completata!", 3000, Notification.Position.TOP_CENTER)
-                    .addThemeVariants(NotificationVariant.LUMO_SUCCESS);
-
-            // Redirect alla login dopo registrazione
-            UI.getCurrent().navigate("login");
+            // L'hash della password viene calcolato fuori dal thread della richiesta; l'esito arriva via push
+            UI ui = UI.getCurrent();
+            // Indirizzo del client per il limite ai tentativi; dietro un proxy serve server.forward-headers-strategy
+            String clientAddress = VaadinRequest.getCurrent().getRemoteAddr();
+            inFlight = true;
+            loginButton.setEnabled(false);
+            CompletableFuture<User> attempt;
+            try {
+                attempt = userService.registerUser(loginData.getEmail(), loginData.getPassword(), clientAddress);
+            } catch (RuntimeException e) {
+                // Anche un errore immediato passa dal completamento, che riabilita il form
+                attempt = CompletableFuture.failedFuture(e);
+            }
+            attempt.whenComplete((user, error) -> ui.access(() -> {
+                        inFlight = false;
+                        loginButton.setEnabled(binder.isValid());
+                        if (error == null) {
+                            Notification.show("Registrazione completata!", 3000, Notification.Position.TOP_CENTER)
+                                    .addThemeVariants(NotificationVariant.LUMO_SUCCESS);
+
+                            // Redirect alla login dopo registrazione
+                            ui.navigate("login");
+                        } else {
+                            Notification.show(errorMessage(error), 3000, Notification.Position.TOP_CENTER)
+                                    .addThemeVariants(NotificationVariant.LUMO_ERROR);
+                        }
+                    }));
 
-        } catch (IllegalArgumentException e) {
-            Notification.show(e.getMessage(), 3000, Notification.Position.TOP_CENTER)
-                    .addThemeVariants(NotificationVariant.LUMO_ERROR);
         } catch (ValidationException e) {
             Notification.show("Controlla i dati inseriti", 3000, Notification.Position.TOP_CENTER)
                     .addThemeVariants(NotificationVariant.LUMO_ERROR);
         }
     }
 
+    // Solo gli errori pensati per l'utente mostrano il loro messaggio; gli altri possono contenere dettagli interni
+    private String errorMessage(Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        if (cause instanceof AuthService.AuthException
+                || cause instanceof PasswordHashingService.HashingBusyException
+                || cause instanceof LoginThrottle.ThrottledException) {
+            return cause.getMessage();
+        }
+        return "Registrazione non riuscita, riprova più tardi";
+    }
+
     // Classe per il data binding
     public static class LoginData {
         private String email;
@@ -0,0 +1,88 @@
+package com.soa.views.value;
+
+import com.soa.model.ValueResolution;
+import com.soa.service.WatchValueService;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Grafico del valore disegnato sul server come SVG: una linea, l'asse dei valori e le date agli estremi. Il browser
+ * riceve solo il markup, qualche kB per qualche centinaio di punti, senza librerie di grafici lato client.
+ */
+final class ValueChart {
+
+    static final int WIDTH = 800;
+    static final int HEIGHT = 300;
+    private static final int LEFT = 110;
+    private static final int RIGHT = 10;
+    private static final int TOP = 10;
+    private static final int BOTTOM = 30;
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("MM/yyyy");
+    private static final String LABEL_STYLE =
+            "font-size: var(--lumo-font-size-s); fill: var(--lumo-secondary-text-color)";
+
+    private ValueChart() {
+    }
+
+    static String render(List<WatchValueService.ValuePoint> points, ValueResolution resolution) {
+        BigDecimal max = points.stream()
+                .map(WatchValueService.ValuePoint::value)
+                .max(BigDecimal::compareTo)
+                .filter(value -> value.signum() > 0)
+                .orElse(BigDecimal.ONE);
+        double plotWidth = WIDTH - LEFT - RIGHT;
+        double plotHeight = HEIGHT - TOP - BOTTOM;
+        double bottom = TOP + plotHeight;
+
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < points.size(); i++) {
+            double x = LEFT + (points.size() == 1 ? plotWidth / 2 : plotWidth * i / (points.size() - 1));
+            double y = bottom - plotHeight * points.get(i).value().doubleValue() / max.doubleValue();
+            line.append(String.format(Locale.ROOT, "%.1f,%.1f ", x, y));
+        }
+
+        StringBuilder svg = new StringBuilder()
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 ").append(WIDTH).append(' ')
+                .append(HEIGHT).append("\" width=\"100%\" role=\"img\" aria-label=\"Valore della collezione\">")
+                .append(axis(LEFT, TOP, LEFT, bottom))
+                .append(axis(LEFT, bottom, WIDTH - RIGHT, bottom))
+                .append(text(LEFT - 6, TOP + 12, "end", money(max)))
+                .append(text(LEFT - 6, bottom, "end", money(BigDecimal.ZERO)));
+        if (!points.isEmpty()) {
+            svg.append(text(LEFT, HEIGHT - 8, "start", label(points.get(0).bucket(), resolution)))
+                    .append(text(WIDTH - RIGHT, HEIGHT - 8, "end",
+                            label(points.get(points.size() - 1).bucket(), resolution)))
+                    .append("<polyline fill=\"none\" style=\"stroke: var(--lumo-primary-color); stroke-width: 2\" ")
+                    .append("points=\"").append(line.toString().strip()).append("\"/>");
+        }
+        return svg.append("</svg>").toString();
+    }
+
+    static String label(LocalDate bucket, ValueResolution resolution) {
+        return switch (resolution) {
+            case DAY -> bucket.toString();
+            case MONTH -> bucket.format(MONTH_FORMAT);
+            case YEAR -> Integer.toString(bucket.getYear());
+        };
+    }
+
+    static String money(BigDecimal value) {
+        return NumberFormat.getCurrencyInstance(Locale.ITALY).format(value);
+    }
+
+    private static String axis(double x1, double y1, double x2, double y2) {
+        return String.format(Locale.ROOT,
+                "<line x1=\"%.1f\" y1=\"%.1f\" x2=\"%.1f\" y2=\"%.1f\" style=\"stroke: var(--lumo-contrast-30pct)\"/>",
+                x1, y1, x2, y2);
+    }
+
+    private static String text(double x, double y, String anchor, String content) {
+        return String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%.1f\" text-anchor=\"%s\" style=\"%s\">%s</text>",
+                x, y, anchor, LABEL_STYLE, content);
+    }
+}
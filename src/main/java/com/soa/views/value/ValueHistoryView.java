@@ -0,0 +1,147 @@
+package com.soa.views.value;
+
+import com.soa.model.UserPrincipal;
+import com.soa.model.ValueResolution;
+import com.soa.service.WatchImportService;
+import com.soa.service.WatchValueService;
+import com.soa.views.home.HomeView;
+import com.vaadin.flow.component.Svg;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.grid.GridVariant;
+import com.vaadin.flow.component.html.H2;
+import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.component.notification.Notification;
+import com.vaadin.flow.component.notification.NotificationVariant;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.select.Select;
+import com.vaadin.flow.component.upload.Upload;
+import com.vaadin.flow.router.PageTitle;
+import com.vaadin.flow.router.Route;
+import com.vaadin.flow.router.RouterLink;
+import com.vaadin.flow.server.VaadinSession;
+import com.vaadin.flow.server.streams.UploadHandler;
+import com.vaadin.flow.theme.lumo.LumoUtility.Margin;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Valore stimato della collezione nel tempo, letto dalle serie riassuntive di {@link WatchValueService}: il costo di
+ * un grafico dipende dal numero di punti mostrati, non dal numero di quotazioni registrate.
+ */
+@PageTitle("Valore")
+@Route("value")
+public class ValueHistoryView extends VerticalLayout {
+
+    private enum Period {
+        LAST_YEAR("Ultimo anno", 1),
+        LAST_5_YEARS("Ultimi 5 anni", 5),
+        LAST_20_YEARS("Ultimi 20 anni", 20),
+        ALL("Tutto", 0);
+
+        private final String label;
+        private final int years;
+
+        Period(String label, int years) {
+            this.label = label;
+            this.years = years;
+        }
+    }
+
+    private final UserPrincipal user;
+    private final transient WatchValueService valueService;
+    private final Select<Period> period = new Select<>();
+    private final Span summary = new Span();
+    private final Svg chart = new Svg();
+    private final Grid<WatchValueService.ValuePoint> points = new Grid<>();
+    private final Span importStatus = new Span();
+    private ValueResolution resolution = ValueResolution.DAY;
+
+    public ValueHistoryView(WatchValueService valueService) {
+        this.valueService = valueService;
+        // Senza utente in sessione la navigazione viene comunque rediretta alla login da RouteAccessListener
+        user = VaadinSession.getCurrent().getAttribute(UserPrincipal.class);
+        if (user == null) {
+            return;
+        }
+
+        H2 header = new H2("Valore della collezione");
+        header.addClassNames(Margin.Top.MEDIUM, Margin.Bottom.SMALL);
+        add(header, new RouterLink("Torna alla collezione", HomeView.class));
+
+        period.setItems(Period.values());
+        period.setItemLabelGenerator(item -> item.label);
+        period.setValue(Period.LAST_20_YEARS);
+        period.addValueChangeListener(event -> showHistory());
+        HorizontalLayout bar = new HorizontalLayout(period, createUpload(), importStatus);
+        bar.setAlignItems(Alignment.CENTER);
+        add(bar, summary);
+
+        chart.getStyle().setWidth("100%").setMaxWidth("60em");
+        add(chart);
+
+        points.addColumn(point -> ValueChart.label(point.bucket(), resolution)).setHeader("Periodo");
+        points.addColumn(point -> ValueChart.money(point.value())).setHeader("Valore");
+        points.addThemeVariants(GridVariant.LUMO_ROW_STRIPES);
+        points.setMaxWidth("30em");
+        add(points);
+        showHistory();
+
+        setSizeFull();
+    }
+
+    private void showHistory() {
+        LocalDate today = LocalDate.now();
+        LocalDate from = period.getValue() == Period.ALL
+                ? valueService.firstValuedYear(user.id()).orElse(today.withDayOfYear(1))
+                : today.minusYears(period.getValue().years).plusDays(1);
+        WatchValueService.ValueHistory history = valueService.history(user.id(), from, today);
+        resolution = history.resolution();
+
+        List<WatchValueService.ValuePoint> latestFirst = new ArrayList<>(history.points());
+        Collections.reverse(latestFirst);
+        summary.setText(String.format("Valore attuale %s, un punto per %s",
+                ValueChart.money(latestFirst.isEmpty() ? BigDecimal.ZERO : latestFirst.get(0).value()),
+                resolution.getLabel().toLowerCase(Locale.ROOT)));
+        chart.setSvg(ValueChart.render(history.points(), resolution));
+        points.setItems(latestFirst);
+    }
+
+    private Upload createUpload() {
+        // Il file arriva in streaming direttamente all'import, senza essere bufferizzato in memoria o su disco
+        UploadHandler handler = event -> {
+            UI ui = event.getUI();
+            try {
+                WatchImportService.ImportReport report = valueService.importQuotes(user.id(), event.getInputStream());
+                ui.access(() -> showImportReport(report));
+            } catch (IOException e) {
+                ui.access(() -> Notification.show("File non leggibile: " + e.getMessage(), 5000,
+                        Notification.Position.TOP_CENTER).addThemeVariants(NotificationVariant.LUMO_ERROR));
+            }
+        };
+        Upload upload = new Upload(handler);
+        upload.setAcceptedFileTypes(".csv");
+        upload.setDropAllowed(false);
+        upload.setUploadButton(new Button("Importa quotazioni"));
+        return upload;
+    }
+
+    private void showImportReport(WatchImportService.ImportReport report) {
+        importStatus.setText(String.format("Importate %d quotazioni, scartate %d (%.0f righe/s)",
+                report.imported(), report.rejected(), report.rowsPerSecond()));
+        if (report.rejected() > 0) {
+            WatchImportService.Rejection first = report.rejections().get(0);
+            Notification.show("Riga " + first.line() + ": " + first.reason(), 5000, Notification.Position.TOP_CENTER)
+                    .addThemeVariants(NotificationVariant.LUMO_WARNING);
+        }
+        showHistory();
+    }
+}
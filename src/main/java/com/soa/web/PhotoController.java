@@ -0,0 +1,164 @@
+package com.soa.web;
+
+import com.soa.model.UserPrincipal;
+import com.soa.service.AuthService;
+import com.soa.service.PhotoStorageService;
+import com.soa.service.WatchService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Foto e miniature degli orologi, servite dal disco senza passare dall'heap.
+ * <p>
+ * I file sono indirizzati per contenuto: l'URL contiene l'hash, quindi un URL identifica sempre gli stessi byte. L'hash
+ * è l'ETag e le risposte si possono tenere in cache per un anno senza rivalidarle ({@code immutable}); le richieste
+ * condizionali ricevono un 304 senza aprire il file. Il corpo parte con il sendfile di Tomcat quando il connettore lo
+ * supporta, altrimenti con {@link FileChannel#transferTo}.
+ * <p>
+ * L'hash non è un segreto (due utenti con la stessa immagine hanno la stessa chiave), quindi ogni richiesta controlla
+ * che l'utente della sessione HTTP abbia un orologio con quella foto; altrimenti risponde 404 come per una foto che
+ * non esiste. Il controllo è una query sull'indice {@code watches_photo_idx} e precede anche il 304.
+ */
+@Slf4j
+@Controller
+@RequiredArgsConstructor
+public class PhotoController {
+
+    static final String CACHE_CONTROL = "private, max-age=31536000, immutable";
+    // Attesa massima di una miniatura appena accodata prima di ripiegare sull'immagine segnaposto
+    private static final long THUMBNAIL_WAIT_MILLIS = 2000;
+    private static final String PLACEHOLDER = "/images/empty-plant.png";
+
+    // Come il DefaultServlet di Tomcat: sotto questa soglia una copia normale costa meno di un sendfile
+    private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final PhotoStorageService photoStorage;
+    private final WatchService watchService;
+
+    public static String photoUrl(String key) {
+        return "/photos/" + key;
+    }
+
+    public static String thumbnailUrl(String key) {
+        return key == null ? PLACEHOLDER : "/photos/" + key + "/thumbnail";
+    }
+
+    @GetMapping("/photos/{key}")
+    public void photo(@PathVariable String key, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        if (!canView(key, request)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (notModified(key, request, response)) {
+            return;
+        }
+        Path original = photoStorage.original(key);
+        if (original == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        send(original, PhotoStorageService.contentType(key), key, request, response);
+    }
+
+    @GetMapping("/photos/{key}/thumbnail")
+    public void thumbnail(@PathVariable String key, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        if (!canView(key, request)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (notModified(key, request, response)) {
+            return;
+        }
+        if (photoStorage.original(key) == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        Path thumbnail;
+        try {
+            thumbnail = photoStorage.thumbnail(key).get(THUMBNAIL_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // Miniatura ancora in coda o originale non decodificabile: segnaposto, da non tenere in cache
+            if (e instanceof ExecutionException) {
+                log.warn("Miniatura non disponibile per {}", key, e.getCause());
+            }
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+            response.sendRedirect(request.getContextPath() + PLACEHOLDER);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        send(thumbnail, "image/jpeg", key, request, response);
+    }
+
+    private boolean canView(String key, HttpServletRequest request) {
+        UserPrincipal principal = AuthService.principalOf(request);
+        return principal != null && watchService.ownsPhoto(principal.id(), key);
+    }
+
+    private static boolean notModified(String key, HttpServletRequest request, HttpServletResponse response) {
+        String hash = PhotoStorageService.hashOf(key);
+        if (hash == null) {
+            return false;
+        }
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag(hash)) || ifNoneMatch.equals("*"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            response.setHeader(HttpHeaders.ETAG, etag(hash));
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+            return true;
+        }
+        return false;
+    }
+
+    private static void send(Path file, String contentType, String key, HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            response.setContentType(contentType);
+            response.setContentLengthLong(size);
+            response.setHeader(HttpHeaders.ETAG, etag(PhotoStorageService.hashOf(key)));
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+
+            if (size >= SENDFILE_MIN_BYTES && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                // Tomcat copia il file nel socket dal kernel, dopo la fine della richiesta
+                request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, 0L);
+                request.setAttribute(SENDFILE_END, size);
+                return;
+            }
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    private static String etag(String hash) {
+        return "\"" + hash + "\"";
+    }
+}
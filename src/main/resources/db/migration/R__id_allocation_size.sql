@@ -0,0 +1,8 @@
+-- Block size of the pooled id generators, from watchers.ids.allocation-size. Hibernate takes the INCREMENT BY of each
+-- sequence as its allocation size (increment_size_mismatch_strategy = fix), so this is the only place where it is set.
+-- Flyway applies the script again whenever the value changes.
+
+ALTER SEQUENCE producers_seq INCREMENT BY ${id_allocation_size};
+ALTER SEQUENCE users_seq INCREMENT BY ${id_allocation_size};
+ALTER SEQUENCE watch_details_seq INCREMENT BY ${id_allocation_size};
+ALTER SEQUENCE watches_seq INCREMENT BY ${id_allocation_size};
@@ -0,0 +1,2 @@
+-- Every photo request checks that the session user has a watch with that photo: one index probe per request.
+CREATE INDEX IF NOT EXISTS watches_photo_idx ON watches (photo, user_id);
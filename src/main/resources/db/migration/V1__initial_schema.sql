@@ -0,0 +1,34 @@
+-- Schema as it was created by ddl-auto=update. Everything is IF NOT EXISTS so that databases created before the
+-- migrations can be baselined at version 0 and pass through this script unchanged.
+
+CREATE SEQUENCE IF NOT EXISTS producers_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS users_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS watch_details_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS watches_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS producers (
+    id   bigint NOT NULL PRIMARY KEY,
+    name varchar(255),
+    code varchar(255)
+);
+
+CREATE TABLE IF NOT EXISTS users (
+    id            bigint NOT NULL PRIMARY KEY,
+    email         varchar(255),
+    password_salt varchar(255),
+    password_hash varchar(255),
+    role          smallint CHECK (role BETWEEN 0 AND 1)
+);
+
+CREATE TABLE IF NOT EXISTS watch_details (
+    id bigint NOT NULL PRIMARY KEY
+);
+
+CREATE TABLE IF NOT EXISTS watches (
+    id                bigint NOT NULL PRIMARY KEY,
+    reference_id      varchar(255),
+    producer_id       bigint NOT NULL REFERENCES producers (id),
+    user_id           bigint NOT NULL REFERENCES users (id),
+    specifications_id bigint UNIQUE REFERENCES watch_details (id),
+    purchase_date     date   NOT NULL
+);
@@ -0,0 +1,9 @@
+-- Login and registration look users up by email: one row per address, enforced by the database.
+-- Fails on databases that already contain duplicate emails; those have to be merged by hand first.
+CREATE UNIQUE INDEX IF NOT EXISTS users_email_key ON users (email);
+
+-- Collection pages: filter by owner, ordered by (purchase_date, id) as the keyset cursor, scanned backwards.
+CREATE INDEX IF NOT EXISTS watches_user_purchase_idx ON watches (user_id, purchase_date, id);
+
+-- Foreign key lookups from producers (and deletes of a producer) without a full scan of watches.
+CREATE INDEX IF NOT EXISTS watches_producer_idx ON watches (producer_id);
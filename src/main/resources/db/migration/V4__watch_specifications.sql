@@ -0,0 +1,6 @@
+-- Structured specifications. Enums are stored by name; complications are a bitmask on the enum ordinal.
+ALTER TABLE watch_details ADD COLUMN IF NOT EXISTS case_size_mm integer;
+ALTER TABLE watch_details ADD COLUMN IF NOT EXISTS movement varchar(32);
+ALTER TABLE watch_details ADD COLUMN IF NOT EXISTS case_material varchar(32);
+ALTER TABLE watch_details ADD COLUMN IF NOT EXISTS complications integer NOT NULL DEFAULT 0;
+ALTER TABLE watch_details ADD COLUMN IF NOT EXISTS water_resistance_m integer;
@@ -0,0 +1,16 @@
+-- Per-user watch counts by producer and purchase year, behind the collection dashboard. Kept up to date on every
+-- insert, update and delete of a watch by WatchStatsListener, in the same transaction as the write; the dashboard
+-- reads a few hundred rows at most whatever the size of the collection.
+CREATE TABLE IF NOT EXISTS watch_stats (
+    user_id       bigint  NOT NULL,
+    producer_id   bigint  NOT NULL,
+    purchase_year integer NOT NULL,
+    watch_count   bigint  NOT NULL,
+    PRIMARY KEY (user_id, producer_id, purchase_year)
+);
+
+-- One full scan to start from the existing collections.
+INSERT INTO watch_stats (user_id, producer_id, purchase_year, watch_count)
+SELECT user_id, producer_id, CAST(EXTRACT(YEAR FROM purchase_date) AS integer), count(*)
+FROM watches
+GROUP BY user_id, producer_id, CAST(EXTRACT(YEAR FROM purchase_date) AS integer);
@@ -0,0 +1,2 @@
+-- Photo of a watch: key of a content-addressed file in the photo storage (sha-256 hex and format), not the image.
+ALTER TABLE watches ADD COLUMN IF NOT EXISTS photo varchar(80);
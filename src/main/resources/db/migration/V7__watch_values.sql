@@ -0,0 +1,32 @@
+-- Estimated market value of watches over time, written by WatchValueService.
+--
+-- watch_values is the append-only log of every quote received: no key, no foreign key, columns ordered to avoid
+-- alignment padding, written with batched inserts. Nothing reads it on the hot path; charts read the rollups.
+CREATE TABLE IF NOT EXISTS watch_values (
+    watch_id    bigint NOT NULL,
+    value_cents bigint NOT NULL,
+    valued_on   date   NOT NULL
+);
+
+-- Closing value of each watch per day, month and year (resolution 0, 1, 2): the latest quote in the period. Only
+-- read by the ingestion, to find the value a new quote replaces. Like watch_stats, the rollups have no foreign keys:
+-- every quote rewrites a few rows here and the checks would cost as much as the writes.
+CREATE TABLE IF NOT EXISTS watch_value_rollups (
+    watch_id    bigint   NOT NULL,
+    resolution  smallint NOT NULL CHECK (resolution BETWEEN 0 AND 2),
+    bucket      date     NOT NULL,
+    close_on    date     NOT NULL,
+    close_cents bigint   NOT NULL,
+    PRIMARY KEY (watch_id, resolution, bucket)
+);
+
+-- Change of the collection value per user and period, at the same three resolutions. A watch keeps its last quoted
+-- value until the next quote, so the collection value at the end of a period is the running sum of the changes: a
+-- 20-year chart reads 20 yearly or 240 monthly rows whatever the number of quotes behind them.
+CREATE TABLE IF NOT EXISTS collection_value_rollups (
+    user_id     bigint   NOT NULL,
+    resolution  smallint NOT NULL CHECK (resolution BETWEEN 0 AND 2),
+    bucket      date     NOT NULL,
+    delta_cents bigint   NOT NULL,
+    PRIMARY KEY (user_id, resolution, bucket)
+);
@@ -0,0 +1,69 @@
+package com.soa.model;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * La dimensione dei blocchi di id viene da {@code watchers.ids.allocation-size}: la migrazione la imposta sulle
+ * sequence e Hibernate la segue al posto dell'{@code allocationSize} delle annotazioni. Database a parte, perché la
+ * migrazione cambia le sequence.
+ */
+@DataJpaTest(properties = {
+        "watchers.ids.allocation-size=" + IdAllocationTest.ALLOCATION_SIZE,
+        "spring.datasource.url=jdbc:h2:mem:allocation;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("test")
+class IdAllocationTest {
+
+    static final int ALLOCATION_SIZE = 7;
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @ParameterizedTest
+    @ValueSource(classes = {User.class, Producer.class, Watch.class, WatchDetail.class})
+    void generatorsUseConfiguredAllocationSize(Class<?> entity) {
+        SequenceStyleGenerator generator = (SequenceStyleGenerator) entityManagerFactory
+                .unwrap(SessionFactoryImplementor.class)
+                .getMappingMetamodel()
+                .getEntityDescriptor(entity)
+                .getGenerator();
+
+        assertThat(generator.getDatabaseStructure().getIncrementSize()).isEqualTo(ALLOCATION_SIZE);
+        Number increment = (Number) entityManager.createNativeQuery(
+                        "select increment from information_schema.sequences where sequence_name = :name")
+                .setParameter("name", generator.getDatabaseStructure().getPhysicalName().getObjectName().getText())
+                .getSingleResult();
+        assertThat(increment.intValue()).isEqualTo(ALLOCATION_SIZE);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, ALLOCATION_SIZE, 3 * ALLOCATION_SIZE + 2})
+    void idsAreDistinctAcrossBlocks(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Producer producer = new Producer();
+            producer.setName("Produttore " + i);
+            producer.setCode("P" + i);
+            entityManager.persist(producer);
+            ids.add(producer.getId());
+        }
+        entityManager.flush();
+
+        assertThat(ids).doesNotHaveDuplicates().doesNotContainNull();
+    }
+}
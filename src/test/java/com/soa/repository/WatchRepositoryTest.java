@@ -0,0 +1,152 @@
+package com.soa.repository;
+
+import com.soa.model.Movement;
+import com.soa.model.Producer;
+import com.soa.model.Role;
+import com.soa.model.User;
+import com.soa.model.Watch;
+import com.soa.model.WatchDetail;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Numero di statement SQL per pagina, dettaglio ed export della collezione: deve restare fisso qualunque sia il numero
+ * di righe, con le cache di Hibernate vuote.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+class WatchRepositoryTest {
+
+    private static final int COLLECTION_SIZE = 120;
+    private static final int PRODUCERS = 5;
+
+    @Autowired
+    private WatchRepository watchRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Long userId;
+    private Long watchId;
+
+    @BeforeEach
+    void createCollection() {
+        List<Producer> producers = new ArrayList<>();
+        for (int i = 0; i < PRODUCERS; i++) {
+            Producer producer = new Producer();
+            producer.setName("Produttore " + i);
+            producer.setCode("P" + i);
+            entityManager.persist(producer);
+            producers.add(producer);
+        }
+        User user = new User();
+        user.setEmail("collector@example.com");
+        user.setPasswordSalt("c2FsdA==");
+        user.setPasswordHash("0000000000000000000000000000000000000000");
+        user.setRole(Role.USER);
+        entityManager.persist(user);
+        userId = user.getId();
+
+        for (int i = 0; i < COLLECTION_SIZE; i++) {
+            WatchDetail detail = new WatchDetail();
+            detail.setCaseSizeMm(36 + i % 8);
+            detail.setMovement(Movement.values()[i % Movement.values().length]);
+            entityManager.persist(detail);
+            Watch watch = new Watch();
+            watch.setReferenceId("REF-" + i);
+            watch.setProducer(producers.get(i % PRODUCERS));
+            watch.setUser(user);
+            watch.setSpecifications(detail);
+            watch.setPurchaseDate(LocalDate.of(2000, 1, 1).plusDays(i * 37L));
+            entityManager.persist(watch);
+            watchId = watch.getId();
+        }
+        entityManager.flush();
+        entityManager.clear();
+        entityManagerFactory.getCache().evictAll();
+        statistics().clear();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {10, 50, 100})
+    void pageLoadUsesSameStatementsForAnyPageSize(int pageSize) {
+        // Quello che fa la griglia: conteggio, prima pagina, pagina successiva, colonne di ogni riga
+        watchRepository.countByUserId(userId);
+        List<Watch> page = new ArrayList<>(watchRepository.findFirstPage(userId, Limit.of(pageSize)));
+        Watch last = page.get(page.size() - 1);
+        page.addAll(watchRepository.findPageAfter(userId, last.getPurchaseDate(), last.getId(), Limit.of(pageSize)));
+        for (Watch watch : page) {
+            assertThat(watch.getReferenceId()).isNotNull();
+            assertThat(watch.getProducer().getId()).isNotNull();
+            assertThat(watch.getPurchaseDate()).isNotNull();
+        }
+
+        assertThat(page).hasSize(Math.min(2 * pageSize, COLLECTION_SIZE));
+        assertThat(statistics().getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 37, COLLECTION_SIZE - 1})
+    void deepJumpFindsTheCursorWithOneKeyOnlyStatement(int skip) {
+        List<Watch> all = watchRepository.findFirstPage(userId, Limit.of(COLLECTION_SIZE));
+        statistics().clear();
+
+        WatchCursor cursor = watchRepository.findCursorAt(userId, skip).orElseThrow();
+        WatchCursor fromBookmark = watchRepository.findCursorAfterAt(userId, all.get(9).getPurchaseDate(),
+                all.get(9).getId(), Math.max(0, skip - 10)).orElse(null);
+
+        assertThat(cursor).isEqualTo(new WatchCursor(all.get(skip).getPurchaseDate(), all.get(skip).getId()));
+        if (skip >= 10) {
+            assertThat(fromBookmark).isEqualTo(cursor);
+        }
+        assertThat(watchRepository.findCursorAt(userId, COLLECTION_SIZE)).isEmpty();
+        assertThat(statistics().getPrepareStatementCount()).isEqualTo(3);
+        assertThat(statistics().getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    void detailLoadsProducerAndSpecificationsWithOneStatement() {
+        Watch watch = watchRepository.findDetailById(watchId).orElseThrow();
+
+        assertThat(watch.getProducer().getName()).startsWith("Produttore");
+        assertThat(watch.getSpecifications().getMovement()).isNotNull();
+        assertThat(statistics().getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void exportStreamsTheCollectionWithOneStatementAndNoSpecifications() {
+        List<Watch> exported;
+        try (Stream<Watch> watches = watchRepository.streamByUserId(userId)) {
+            exported = watches.toList();
+        }
+
+        assertThat(exported).hasSize(COLLECTION_SIZE).allSatisfy(watch -> {
+            assertThat(watch.getProducer().getId()).isNotNull();
+            assertThat(Hibernate.isInitialized(watch.getSpecifications())).isFalse();
+        });
+        assertThat(statistics().getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+}
@@ -0,0 +1,54 @@
+package com.soa.service;
+
+import com.soa.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * La lettura delle credenziali non gira sul thread chiamante e un suo errore arriva nel future, misurato come tale.
+ */
+class AuthServiceTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final PasswordHashingService passwordHashingService = mock(PasswordHashingService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AuthService authService = new AuthService(userRepository, null, passwordHashingService,
+            new LoginThrottle(10, 5, 120, 30, 1000), meterRegistry, 1);
+
+    @AfterEach
+    void shutdown() {
+        authService.shutdown();
+    }
+
+    @Test
+    void slowLookupDoesNotBlockTheCaller() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        when(userRepository.findCredentialsByEmail("slow@example.com")).thenAnswer(invocation -> {
+            assertThat(release.await(10, TimeUnit.SECONDS)).isTrue();
+            throw new DataAccessResourceFailureException("database non raggiungibile");
+        });
+
+        CompletableFuture<?> result = authService.authenticate("slow@example.com", "password", "10.0.0.1");
+        assertThat(result).isNotDone();
+        release.countDown();
+
+        assertThatThrownBy(() -> result.get(10, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(DataAccessResourceFailureException.class);
+        verifyNoInteractions(passwordHashingService);
+        assertThat(meterRegistry.get("watchers.auth.lookup").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("watchers.auth.authenticate").tag("outcome", "error").timer().count())
+                .isEqualTo(1);
+    }
+}
@@ -0,0 +1,128 @@
+package com.soa.service;
+
+import com.soa.model.Producer;
+import com.soa.repository.ProducerRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Letture concorrenti a un refresh e refresh sovrapposti, con il repository finto.
+ */
+class ProducerCatalogTest {
+
+    private static final int STABLE_PRODUCERS = 20;
+    private static final int READERS = 4;
+    private static final int REFRESHES = 500;
+
+    private final ProducerRepository producerRepository = mock(ProducerRepository.class);
+    private final ProducerCatalog catalog = new ProducerCatalog(producerRepository);
+
+    @Test
+    void readersAlwaysSeeACompleteSnapshotDuringRefreshes() throws InterruptedException {
+        // Ogni versione ha gli stessi produttori stabili più uno che compare e scompare
+        AtomicInteger version = new AtomicInteger();
+        when(producerRepository.findAll(any(Sort.class))).thenAnswer(invocation -> {
+            List<Producer> producers = producers(STABLE_PRODUCERS);
+            if (version.incrementAndGet() % 2 == 0) {
+                producers.add(producer(1000, "EXTRA"));
+            }
+            return producers;
+        });
+        catalog.refresh();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            Thread reader = new Thread(() -> {
+                while (running.get()) {
+                    for (long id = 1; id <= STABLE_PRODUCERS; id++) {
+                        Producer byId = catalog.findById(id);
+                        Producer byCode = catalog.findByCode("P" + id);
+                        if (byId == null || byCode == null || byCode.getId() != id) {
+                            failures.add("produttore " + id + " mancante");
+                        }
+                    }
+                    int size = catalog.findAll().size();
+                    if (size != STABLE_PRODUCERS && size != STABLE_PRODUCERS + 1) {
+                        failures.add("catalogo di " + size + " produttori");
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (int i = 0; i < REFRESHES; i++) {
+            catalog.refresh();
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertThat(failures).isEmpty();
+    }
+
+    @Test
+    void overlappingRefreshesInstallTheLatestLoad() throws InterruptedException {
+        CountDownLatch staleLoadStarted = new CountDownLatch(1);
+        CountDownLatch releaseStaleLoad = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        when(producerRepository.findAll(any(Sort.class))).thenAnswer(invocation -> {
+            if (loads.incrementAndGet() == 1) {
+                // Il primo caricamento legge prima dell'aggiunta ma finisce dopo il secondo
+                staleLoadStarted.countDown();
+                assertThat(releaseStaleLoad.await(10, TimeUnit.SECONDS)).isTrue();
+                return producers(1);
+            }
+            return producers(2);
+        });
+
+        Thread stale = new Thread(catalog::refresh);
+        stale.start();
+        assertThat(staleLoadStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        Thread fresh = new Thread(catalog::refresh);
+        fresh.start();
+        // Il secondo refresh o aspetta il primo o è già finito: in entrambi i casi il vecchio può ripartire
+        while (fresh.getState() != Thread.State.BLOCKED && fresh.getState() != Thread.State.TERMINATED) {
+            Thread.onSpinWait();
+        }
+        releaseStaleLoad.countDown();
+        stale.join();
+        fresh.join();
+
+        assertThat(catalog.getSize()).isEqualTo(2);
+        assertThat(catalog.findByCode("P2")).isNotNull();
+    }
+
+    private static List<Producer> producers(int count) {
+        List<Producer> producers = new ArrayList<>();
+        for (long id = 1; id <= count; id++) {
+            producers.add(producer(id, "P" + id));
+        }
+        return producers;
+    }
+
+    private static Producer producer(long id, String code) {
+        Producer producer = new Producer();
+        producer.setId(id);
+        producer.setName("Produttore " + code);
+        producer.setCode(code);
+        return producer;
+    }
+}
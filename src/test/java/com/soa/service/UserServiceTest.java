@@ -0,0 +1,87 @@
+package com.soa.service;
+
+import com.soa.model.User;
+import com.soa.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Registrazioni concorrenti della stessa email: il solo arbitro è l'indice unico, senza controlli preventivi. Fuori
+ * transazione, perché gli insert avvengono sul pool delle scritture e devono vedersi a vicenda.
+ */
+@DataJpaTest(properties = {
+        "watchers.hashing.iterations=1000",
+        "watchers.hashing.threads=" + UserServiceTest.REGISTRATIONS,
+        "watchers.users.write-threads=" + UserServiceTest.REGISTRATIONS,
+        "watchers.throttle.email.burst=" + UserServiceTest.REGISTRATIONS
+})
+@Import({UserService.class, PasswordHashingService.class, LoginThrottle.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ActiveProfiles("test")
+class UserServiceTest {
+
+    static final int REGISTRATIONS = 8;
+    private static final String EMAIL = "race@example.com";
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private UserRepository userRepository;
+    @MockitoBean
+    private InvalidationBus invalidationBus;
+
+    @AfterEach
+    void deleteUsers() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void concurrentRegistrationsOfOneEmailLetExactlyOneSucceed() {
+        List<CompletableFuture<User>> attempts = new ArrayList<>();
+        for (int i = 0; i < REGISTRATIONS; i++) {
+            attempts.add(userService.registerUser(EMAIL, "password-" + i, "10.0.0." + i));
+        }
+
+        int succeeded = 0;
+        for (CompletableFuture<User> attempt : attempts) {
+            try {
+                assertThat(attempt.join().getEmail()).isEqualTo(EMAIL);
+                succeeded++;
+            } catch (CompletionException e) {
+                assertThat(e.getCause()).isInstanceOf(AuthService.AuthException.class)
+                        .hasMessage("Email già registrata");
+            }
+        }
+
+        assertThat(succeeded).isEqualTo(1);
+        assertThat(userRepository.findCredentialsByEmail(EMAIL)).isPresent();
+        assertThat(userRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void otherIntegrityViolationsAreNotReportedAsDuplicateEmail() {
+        // Oltre la lunghezza della colonna: viola lo schema, non l'indice sull'email
+        String tooLong = "x".repeat(300) + "@example.com";
+
+        assertThatThrownBy(() -> userService.registerUser(tooLong, "password", null).join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(DataIntegrityViolationException.class);
+    }
+}
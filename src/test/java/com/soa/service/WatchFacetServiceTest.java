@@ -0,0 +1,109 @@
+package com.soa.service;
+
+import com.soa.model.Producer;
+import com.soa.model.Role;
+import com.soa.model.User;
+import com.soa.model.Watch;
+import com.soa.repository.ProducerRepository;
+import com.soa.repository.UserRepository;
+import com.soa.repository.WatchRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Dopo una scrittura l'indice delle faccette non viene ricostruito a ogni lettura: le letture restano sull'indice
+ * precedente finché la ricostruzione in background non lo sostituisce e avvisa le viste. Fuori transazione, perché la
+ * ricostruzione gira su un altro thread e deve vedere gli orologi salvati dal test.
+ */
+@DataJpaTest(properties = "watchers.facets.rebuild-interval-millis=" + WatchFacetServiceTest.REBUILD_INTERVAL_MILLIS)
+@Import({WatchFacetService.class, ProducerCatalog.class, CollectionUpdateBus.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ActiveProfiles("test")
+class WatchFacetServiceTest {
+
+    static final long REBUILD_INTERVAL_MILLIS = 2000;
+    private static final int WRITES = 20;
+
+    @Autowired
+    private WatchFacetService facetService;
+    @Autowired
+    private CollectionUpdateBus collectionUpdates;
+    @Autowired
+    private WatchRepository watchRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProducerRepository producerRepository;
+
+    private User user;
+    private Producer producer;
+
+    @BeforeEach
+    void createCollector() {
+        producer = new Producer();
+        producer.setName("Produttore");
+        producer.setCode("P");
+        producer = producerRepository.save(producer);
+        user = new User();
+        user.setEmail("facets@example.com");
+        user.setPasswordSalt("c2FsdA==");
+        user.setPasswordHash("0000000000000000000000000000000000000000");
+        user.setRole(Role.USER);
+        user = userRepository.save(user);
+        addWatch(0);
+    }
+
+    @AfterEach
+    void deleteCollector() {
+        watchRepository.deleteAll();
+        userRepository.deleteAll();
+        producerRepository.deleteAll();
+    }
+
+    @Test
+    void writesAreAppliedByOneBackgroundRebuildAndViewsAreNotified() throws InterruptedException {
+        assertThat(facetService.count(user.getId(), Map.of())).isEqualTo(1);
+        AtomicInteger notifications = new AtomicInteger();
+        collectionUpdates.subscribe(user.getId(), notifications::incrementAndGet);
+
+        // Un import a blocchi: molte scritture in fila, ognuna seguita da una lettura delle viste
+        for (int i = 1; i <= WRITES; i++) {
+            addWatch(i);
+            facetService.onWatchesChanged(new WatchesChangedEvent(user.getId()));
+            assertThat(facetService.count(user.getId(), Map.of())).isEqualTo(1);
+        }
+        collectionUpdates.flush();
+        assertThat(notifications).hasValue(0);
+
+        // Le viste vengono avvisate dopo che il nuovo indice è in cache
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (notifications.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            collectionUpdates.flush();
+        }
+        assertThat(notifications).hasValue(1);
+        assertThat(facetService.count(user.getId(), Map.of())).isEqualTo(WRITES + 1);
+    }
+
+    private void addWatch(int i) {
+        Watch watch = new Watch();
+        watch.setReferenceId("REF-" + i);
+        watch.setProducer(producer);
+        watch.setUser(user);
+        watch.setPurchaseDate(LocalDate.of(2020, 1, 1).plusDays(i));
+        watchRepository.save(watch);
+    }
+}
@@ -0,0 +1,102 @@
+package com.soa.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WatchRecordsTest {
+
+    @Test
+    void csvQuotedFieldsMaySpanLines() throws IOException {
+        List<WatchRecords.Row> rows = read(WatchRecords.Format.CSV, """
+                reference_id,producer_code,purchase_date
+                "116610LN, ""Submariner""
+                con lunetta verde",ROLEX,2020-01-01
+                5711,PP,2021-02-03
+                """);
+
+        assertThat(rows).containsExactly(
+                new WatchRecords.Row(2, "116610LN, \"Submariner\"\ncon lunetta verde", "ROLEX", "2020-01-01"),
+                new WatchRecords.Row(4, "5711", "PP", "2021-02-03"));
+    }
+
+    @Test
+    void csvUnclosedQuoteRejectsOnlyThatRecord() throws IOException {
+        List<WatchRecords.Row> rows = read(WatchRecords.Format.CSV, "reference_id,producer_code,purchase_date\n"
+                + "5711,PP,2021-02-03\n"
+                + "\"116610LN,ROLEX,2020-01-01\n"
+                + "note,senza,virgolette\n".repeat(WatchRecords.MAX_RECORD_LINES - 1)
+                + "5712,PP,2021-02-04\n");
+
+        assertThat(rows).hasSize(3);
+        assertThat(rows.get(0).error()).isNull();
+        assertThat(rows.get(1).line()).isEqualTo(3);
+        assertThat(rows.get(1).error()).contains("Virgolette non chiuse");
+        assertThat(rows.get(2)).isEqualTo(new WatchRecords.Row(3 + WatchRecords.MAX_RECORD_LINES, "5712", "PP",
+                "2021-02-04"));
+    }
+
+    @Test
+    void csvExportRoundTripsFieldsWithNewlines() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (WatchRecords.RowWriter writer = WatchRecords.writer(WatchRecords.Format.CSV, out)) {
+            writer.write("riga\nsuccessiva", "ROLEX", "2020-01-01");
+        }
+
+        assertThat(read(WatchRecords.Format.CSV, out.toString(StandardCharsets.UTF_8)))
+                .containsExactly(new WatchRecords.Row(2, "riga\nsuccessiva", "ROLEX", "2020-01-01"));
+    }
+
+    @Test
+    void jsonElementsWithWrongShapeAreRejectedOneByOne() throws IOException {
+        List<WatchRecords.Row> rows = read(WatchRecords.Format.JSON, """
+                [
+                  {"referenceId": "5711", "producerCode": "PP", "purchaseDate": "2021-02-03"},
+                  42,
+                  {"referenceId": {"nested": ["a", "b"]}, "producerCode": "PP", "purchaseDate": "2021-02-03"},
+                  {"notes": {"a": [1, 2]}, "referenceId": "5712", "producerCode": "PP", "purchaseDate": "2021-02-04"}
+                ]
+                """);
+
+        assertThat(rows).hasSize(4);
+        assertThat(rows.get(0)).isEqualTo(new WatchRecords.Row(1, "5711", "PP", "2021-02-03"));
+        assertThat(rows.get(1).error()).startsWith("Atteso un oggetto");
+        assertThat(rows.get(2).error()).isEqualTo("Valore non valido per referenceId");
+        assertThat(rows.get(3)).isEqualTo(new WatchRecords.Row(4, "5712", "PP", "2021-02-04"));
+    }
+
+    @Test
+    void jsonSyntaxErrorKeepsRowsBeforeAndEndsTheFile() throws IOException {
+        List<WatchRecords.Row> rows = read(WatchRecords.Format.JSON, """
+                [
+                  {"referenceId": "5711", "producerCode": "PP", "purchaseDate": "2021-02-03"},
+                  {"referenceId": "5712", "producerCode": PP},
+                  {"referenceId": "5713", "producerCode": "PP", "purchaseDate": "2021-02-05"}
+                ]
+                """);
+
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0).error()).isNull();
+        assertThat(rows.get(1).line()).isEqualTo(2);
+        assertThat(rows.get(1).error()).contains("il resto del file è stato ignorato");
+    }
+
+    private static List<WatchRecords.Row> read(WatchRecords.Format format, String text) throws IOException {
+        List<WatchRecords.Row> rows = new ArrayList<>();
+        try (WatchRecords.RowReader reader = WatchRecords.reader(format,
+                new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)))) {
+            WatchRecords.Row row;
+            while ((row = reader.next()) != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+}
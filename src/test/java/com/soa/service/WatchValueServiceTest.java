@@ -0,0 +1,112 @@
+package com.soa.service;
+
+import com.soa.model.Producer;
+import com.soa.model.Role;
+import com.soa.model.User;
+import com.soa.model.Watch;
+import com.soa.repository.ProducerRepository;
+import com.soa.repository.UserRepository;
+import com.soa.repository.WatchRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Import delle quotazioni con le regole CSV dell'import della collezione. Fuori transazione, perché ogni blocco di
+ * quotazioni viene scritto nella propria.
+ */
+@DataJpaTest
+@Import(WatchValueService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ActiveProfiles("test")
+class WatchValueServiceTest {
+
+    private static final String QUOTED_REFERENCE = "116610LN, \"Submariner\"";
+
+    @Autowired
+    private WatchValueService valueService;
+    @Autowired
+    private WatchRepository watchRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProducerRepository producerRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    @BeforeEach
+    void createCollection() {
+        Producer producer = new Producer();
+        producer.setName("Rolex");
+        producer.setCode("ROLEX");
+        producer = producerRepository.save(producer);
+        user = new User();
+        user.setEmail("quotes@example.com");
+        user.setPasswordSalt("c2FsdA==");
+        user.setPasswordHash("0000000000000000000000000000000000000000");
+        user.setRole(Role.USER);
+        user = userRepository.save(user);
+        addWatch(producer, QUOTED_REFERENCE);
+        addWatch(producer, "5711");
+    }
+
+    @AfterEach
+    void deleteCollection() {
+        jdbcTemplate.update("delete from collection_value_rollups");
+        jdbcTemplate.update("delete from watch_value_rollups");
+        jdbcTemplate.update("delete from watch_values");
+        watchRepository.deleteAll();
+        userRepository.deleteAll();
+        producerRepository.deleteAll();
+    }
+
+    @Test
+    void quotedReferenceIdsWithCommasAndQuotesAreMatched() throws IOException {
+        WatchImportService.ImportReport report = importQuotes("""
+                reference_id,valued_on,value
+                "116610LN, ""Submariner\""",2021-01-01,12500.00
+                5711,2021-01-01,95000
+                "5711",2021-02-01,96000
+                "116610LN,2021-03-01,13000
+                """);
+
+        assertThat(report.imported()).isEqualTo(3);
+        assertThat(report.rejected()).isEqualTo(1);
+        // La virgoletta non chiusa si mangia il resto del file: il record scartato è quello in cui inizia
+        assertThat(report.rejections()).singleElement()
+                .satisfies(rejection -> assertThat(rejection.line()).isEqualTo(5))
+                .satisfies(rejection -> assertThat(rejection.reason()).contains("Virgolette non chiuse"));
+        assertThat(jdbcTemplate.queryForObject("""
+                select count(*) from watch_values v join watches w on w.id = v.watch_id
+                where w.reference_id = ?""", Long.class, QUOTED_REFERENCE)).isEqualTo(1);
+    }
+
+    private WatchImportService.ImportReport importQuotes(String csv) throws IOException {
+        return valueService.importQuotes(user.getId(), new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void addWatch(Producer producer, String referenceId) {
+        Watch watch = new Watch();
+        watch.setReferenceId(referenceId);
+        watch.setProducer(producer);
+        watch.setUser(user);
+        watch.setPurchaseDate(LocalDate.of(2020, 1, 1));
+        watchRepository.save(watch);
+    }
+}
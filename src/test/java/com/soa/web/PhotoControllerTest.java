@@ -0,0 +1,87 @@
+package com.soa.web;
+
+import com.soa.model.Role;
+import com.soa.model.UserPrincipal;
+import com.soa.service.AuthService;
+import com.soa.service.PhotoStorageService;
+import com.soa.service.WatchService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Le foto si servono solo all'utente della sessione che ha un orologio con quella chiave.
+ */
+@WebMvcTest(PhotoController.class)
+@ActiveProfiles("test")
+class PhotoControllerTest {
+
+    private static final String KEY = "a".repeat(64) + ".png";
+    private static final UserPrincipal OWNER = new UserPrincipal(1L, "owner@example.com", Role.USER);
+    private static final UserPrincipal OTHER = new UserPrincipal(2L, "other@example.com", Role.USER);
+
+    @Autowired
+    private MockMvc mockMvc;
+    @MockitoBean
+    private PhotoStorageService photoStorage;
+    @MockitoBean
+    private WatchService watchService;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void ownerGetsThePhoto() throws Exception {
+        when(watchService.ownsPhoto(OWNER.id(), KEY)).thenReturn(true);
+        when(photoStorage.original(KEY)).thenReturn(photo());
+
+        mockMvc.perform(get(PhotoController.photoUrl(KEY)).session(sessionOf(OWNER)))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(new byte[] {1, 2, 3}));
+    }
+
+    @Test
+    void otherUsersAndAnonymousRequestsGetNotFound() throws Exception {
+        when(photoStorage.original(KEY)).thenReturn(photo());
+
+        mockMvc.perform(get(PhotoController.photoUrl(KEY)).session(sessionOf(OTHER)))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get(PhotoController.thumbnailUrl(KEY)).session(sessionOf(OTHER)))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get(PhotoController.photoUrl(KEY)))
+                .andExpect(status().isNotFound());
+        // Nemmeno il 304: l'ETag confermerebbe che la foto esiste
+        mockMvc.perform(get(PhotoController.photoUrl(KEY)).header("If-None-Match", "*"))
+                .andExpect(status().isNotFound());
+
+        verify(photoStorage, never()).original(any());
+        verify(photoStorage, never()).thumbnail(any());
+    }
+
+    private Path photo() throws IOException {
+        return Files.write(directory.resolve(KEY), new byte[] {1, 2, 3});
+    }
+
+    private static MockHttpSession sessionOf(UserPrincipal principal) {
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute(AuthService.SESSION_PRINCIPAL, principal);
+        return session;
+    }
+}